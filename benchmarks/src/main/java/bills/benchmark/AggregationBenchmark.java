@@ -0,0 +1,54 @@
+package bills.benchmark;
+
+import bills.datamodel.BillAggregator;
+import bills.datamodel.BillData;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times monthly and yearly aggregation per account and per bill name on fork/join
+ * pools of 1 up to the number of cores, to show how it scales.
+ *
+ * Usage: java bills.benchmark.AggregationBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class AggregationBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int count = BenchmarkSupport.countArgument(args, 2_000_000);
+        BillData data = new BillData();
+        data.getBills().addAll(BenchmarkSupport.generateBills(count, 42L));
+        BillAggregator byAccount = new BillAggregator(data.getColumns(), BillAggregator.GroupBy.ACCOUNT);
+        BillAggregator byName = new BillAggregator(data.getColumns(), BillAggregator.GroupBy.NAME);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            int rows = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                rows = byAccount.aggregate(BillAggregator.Period.MONTH, pool).size()
+                        + byAccount.aggregate(BillAggregator.Period.YEAR, pool).size()
+                        + byName.aggregate(BillAggregator.Period.MONTH, pool).size()
+                        + byName.aggregate(BillAggregator.Period.YEAR, pool).size();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            double millis = best / 1e6;
+            if (threads == 1) {
+                single = millis;
+            }
+            System.out.printf("%2d threads  %8.2f ms  speedup %5.2fx  (%d summary rows, %,d bills)%n",
+                    threads, millis, single / millis, rows, count);
+            if (threads < cores && threads * 2 > cores) {
+                threads = cores / 2; // Finish on exactly the number of cores.
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Helpers shared by the benchmark programs - generated bill data sets and
+ * allocation measurement for the current thread.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BenchmarkSupport {
+
+    private static final String[] NAMES = {"Gas", "Electric", "Water", "Council Tax", "Phone",
+            "Broadband", "TV Licence", "Insurance", "Mortgage", "Gym"};
+    private static final String[] ACCOUNTS = {"Wayne", "Nicki", "None"};
+    private static final LocalDate FIRST_DATE = LocalDate.of(2015, 1, 1);
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Create a repeatable list of bills spread over ten years of due dates.
+     * @param count number of bills to create.
+     * @param seed random seed so runs can be compared.
+     * @return list of generated bills.
+     */
+    static List<Bill> generateBills(int count, long seed) {
+        Random random = new Random(seed);
+        List<Bill> generated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDate due = FIRST_DATE.plusDays(random.nextInt(3650));
+            double amount = random.nextInt(100000) / 100.0;
+            generated.add(new Bill(NAMES[random.nextInt(NAMES.length)], due, amount,
+                    ACCOUNTS[random.nextInt(ACCOUNTS.length)], i % 4 == 0 ? "paid by direct debit " + i : " ",
+                    due.minusYears(1), due.minusDays(random.nextInt(60)), amount - 1.0));
+        }
+        return generated;
+    }
+
+    /**
+     * Write a generated bills file using the application's own XML writer.
+     * @param count number of bills in the file.
+     * @return path of the temporary file written.
+     * @throws IOException if the temporary file cannot be created.
+     */
+    static Path writeBillsFile(int count) throws IOException {
+        Path file = Files.createTempFile("bills-" + count + "-", ".xml");
+        file.toFile().deleteOnExit();
+        BillData data = new BillData(file.toString());
+        data.getBills().addAll(generateBills(count, 42L));
+        data.saveBills();
+        return file;
+    }
+
+    /**
+     * @return total bytes allocated so far by the calling thread.
+     */
+    static long allocatedBytes() {
+        return THREAD_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Parse the optional first argument as a bill count.
+     */
+    static int countArgument(String[] args, int defaultCount) {
+        return args.length > 0 ? Integer.parseInt(args[0]) : defaultCount;
+    }
+}
@@ -0,0 +1,102 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for creating bills and reading them, through the getters as the totals
+ * do and through the JavaFX properties as the table and bindings do. A bill only creates
+ * its properties when first asked for them, so that is measured on its own as well.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BillBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private List<Bill> bills;          // Never asked for their properties
+    private List<Bill> boundBills;     // Properties already created, as once shown in the table
+
+    @Setup(Level.Trial)
+    public void generate() {
+        bills = BenchmarkSupport.generateBills(size, 42L);
+        boundBills = BenchmarkSupport.generateBills(size, 42L);
+        readProperties(boundBills);
+    }
+
+    /**
+     * Fresh bills for each call of createProperties().
+     */
+    @State(Scope.Thread)
+    public static class FreshBills {
+        private List<Bill> bills;
+
+        @Setup(Level.Invocation)
+        public void generate(BillBenchmark benchmark) {
+            bills = BenchmarkSupport.generateBills(benchmark.size, 42L);
+        }
+    }
+
+    @Benchmark
+    public List<Bill> construct() {
+        return BenchmarkSupport.generateBills(size, 42L);
+    }
+
+    @Benchmark
+    public long getters() {
+        long check = 0;
+        for (Bill bill : bills) {
+            check += bill.getName().length() + bill.getBankAccount().length() + bill.getNotes().length();
+            check += bill.getDateOfPayment().toEpochDay() + bill.getDateChanged().toEpochDay()
+                    + bill.getDateStarted().toEpochDay();
+            check += (long) bill.getAmount() + (long) bill.getPreviousAmount() + bill.getRecurrence().ordinal();
+        }
+        return check;
+    }
+
+    @Benchmark
+    public long properties() {
+        return readProperties(boundBills);
+    }
+
+    @Benchmark
+    public long createProperties(FreshBills fresh) {
+        return readProperties(fresh.bills);
+    }
+
+    // Read every property of every bill through its xxxProperty() accessor.
+    private static long readProperties(List<Bill> bills) {
+        long check = 0;
+        for (Bill bill : bills) {
+            check += bill.nameProperty().get().length() + bill.bankAccountProperty().get().length()
+                    + bill.notesProperty().get().length();
+            check += bill.dateOfPaymentProperty().get().toEpochDay() + bill.dateChangedProperty().get().toEpochDay()
+                    + bill.dateStartedProperty().get().toEpochDay();
+            check += (long) bill.amountProperty().get() + (long) bill.previousAmountProperty().get()
+                    + bill.recurrenceProperty().get().ordinal();
+        }
+        return check;
+    }
+}
@@ -0,0 +1,79 @@
+package bills.benchmark;
+
+import bills.datamodel.BillData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for loading and saving the bills file and for the bills total, over
+ * generated data sets of each size. Run with the gradle jmh task, which adds the GC
+ * profiler for allocation; 10,000,000 bills needs -p size=10000000 and about 8 GB of heap.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BillDataBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private Path file;
+    private BillData data;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = BenchmarkSupport.writeBillsFile(size);
+        data = new BillData(file.toString());
+        data.loadBills();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public BillData loadBills() {
+        BillData loaded = new BillData(file.toString());
+        loaded.loadBills();
+        return loaded;
+    }
+
+    @Benchmark
+    public BillData saveBills() {
+        data.saveBills();
+        return data;
+    }
+
+    @Benchmark
+    public double calculateTotal() {
+        return data.calculateTotal();
+    }
+
+    @Benchmark
+    public long recalculateTotal() {
+        return data.recalculateTotalCents();
+    }
+}
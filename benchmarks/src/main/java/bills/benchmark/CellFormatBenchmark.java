@@ -0,0 +1,69 @@
+package bills.benchmark;
+
+import bills.AmountUtil;
+import bills.DateUtil;
+import bills.FormattedValueCache;
+import bills.datamodel.Bill;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Measures the text formatting done for the date and amount cells while scrolling the
+ * bills table one row at a time, before and after caching the formatted strings.
+ * Every visible cell is updated on each scroll step, as the table reuses its cells.
+ * Controls cannot be created without a display, so only the formatting is run.
+ *
+ * Usage: java bills.benchmark.CellFormatBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class CellFormatBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int VISIBLE_ROWS = 30;
+
+    private static int check; // Keeps the formatted text in use
+
+    public static void main(String[] args) {
+        int count = BenchmarkSupport.countArgument(args, 100_000);
+        List<Bill> bills = BenchmarkSupport.generateBills(count, 42L);
+        LocalDate[] dates = new LocalDate[count];
+        Double[] amounts = new Double[count];
+        for (int i = 0; i < count; i++) {
+            dates[i] = bills.get(i).getDateOfPayment();
+            amounts[i] = bills.get(i).getAmount();
+        }
+        FormattedValueCache<LocalDate> dateCache = new FormattedValueCache<>(DateUtil::format);
+        FormattedValueCache<Double> amountCache = new FormattedValueCache<>(AmountUtil::format);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = BenchmarkSupport.allocatedBytes();
+            long start = System.nanoTime();
+            for (int top = 0; top + VISIBLE_ROWS <= count; top++) {
+                for (int row = top; row < top + VISIBLE_ROWS; row++) {
+                    check += String.format(DateUtil.format(dates[row])).length();
+                    check += String.format("%.2f", amounts[row].doubleValue()).length();
+                }
+            }
+            report("String.format ", count, System.nanoTime() - start, BenchmarkSupport.allocatedBytes() - allocated);
+
+            allocated = BenchmarkSupport.allocatedBytes();
+            start = System.nanoTime();
+            for (int top = 0; top + VISIBLE_ROWS <= count; top++) {
+                for (int row = top; row < top + VISIBLE_ROWS; row++) {
+                    check += dateCache.format(dates[row]).length();
+                    check += amountCache.format(amounts[row]).length();
+                }
+            }
+            report("cached strings", count, System.nanoTime() - start, BenchmarkSupport.allocatedBytes() - allocated);
+        }
+        System.out.println(check == 0 ? "" : "cached dates " + dateCache.size() + ", amounts " + amountCache.size());
+    }
+
+    private static void report(String formatting, int count, long nanos, long bytes) {
+        long rows = (long) (count - VISIBLE_ROWS + 1) * VISIBLE_ROWS;
+        System.out.printf("%s  %,8.1f ns/row  %,6d bytes/row%n", formatting, (double) nanos / rows, bytes / rows);
+    }
+}
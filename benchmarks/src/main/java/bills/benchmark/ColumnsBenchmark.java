@@ -0,0 +1,74 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillColumns;
+import bills.datamodel.BillData;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares aggregate queries over the Bill objects with the same queries over BillColumns.
+ *
+ * Usage: java bills.benchmark.ColumnsBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class ColumnsBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int count = BenchmarkSupport.countArgument(args, 1_000_000);
+        BillData data = new BillData();
+        data.getBills().addAll(BenchmarkSupport.generateBills(count, 42L));
+        BillColumns columns = data.getColumns();
+        LocalDate from = LocalDate.of(2019, 1, 1);
+        LocalDate to = LocalDate.of(2019, 12, 31);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            double objectTotal = 0;
+            for (Bill bill : data.getBills()) {
+                objectTotal += bill.getAmount();
+            }
+            long objectTotalNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            long columnTotal = columns.totalCents();
+            long columnTotalNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double objectRange = 0;
+            for (Bill bill : data.getBills()) {
+                LocalDate due = bill.getDateOfPayment();
+                if (!due.isBefore(from) && !due.isAfter(to)) {
+                    objectRange += bill.getAmount();
+                }
+            }
+            long objectRangeNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            long columnRange = columns.totalCentsDueBetween(from, to);
+            long columnRangeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Map<String, Double> objectGroups = new HashMap<>();
+            for (Bill bill : data.getBills()) {
+                objectGroups.merge(bill.getBankAccount(), bill.getAmount(), Double::sum);
+            }
+            long objectGroupNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            Map<String, Long> columnGroups = columns.totalCentsByAccount();
+            long columnGroupNanos = System.nanoTime() - start;
+
+            System.out.printf("total %6.2f ms vs %6.2f ms | range %6.2f ms vs %6.2f ms | by account %6.2f ms vs %6.2f ms%n",
+                    objectTotalNanos / 1e6, columnTotalNanos / 1e6, objectRangeNanos / 1e6, columnRangeNanos / 1e6,
+                    objectGroupNanos / 1e6, columnGroupNanos / 1e6);
+            if (round == ROUNDS - 1) {
+                System.out.printf("check: %.2f/%d %.2f/%d %s/%s%n", objectTotal, columnTotal,
+                        objectRange, columnRange, objectGroups, columnGroups);
+            }
+        }
+    }
+}
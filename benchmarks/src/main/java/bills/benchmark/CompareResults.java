@@ -0,0 +1,67 @@
+package bills.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with -rf csv, such as one from before a change
+ * and one from after it, printing each score and its ratio to the baseline. Scores
+ * include the latency percentiles and, with -prof gc, the allocation rates.
+ *
+ * Usage: java bills.benchmark.CompareResults baseline.csv results.csv
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class CompareResults {
+
+    private static final String FIELD_SEPARATOR = ",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)"; // Commas outside quotes
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java bills.benchmark.CompareResults baseline.csv results.csv");
+            return;
+        }
+        Map<String, Double> baseline = read(Paths.get(args[0]));
+        Map<String, Double> results = read(Paths.get(args[1]));
+        System.out.printf("%-70s %16s %16s %8s%n", "benchmark", "baseline", "score", "ratio");
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            Double before = baseline.get(result.getKey());
+            System.out.printf("%-70s %,16.3f %,16.3f %8s%n", result.getKey(),
+                    before == null ? Double.NaN : before, result.getValue(),
+                    before == null ? "new" : String.format("x%.2f", result.getValue() / before));
+        }
+    }
+
+    // Score by benchmark, mode, unit and parameters.
+    private static Map<String, Double> read(Path csvFile) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(csvFile);
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] fields = line.split(FIELD_SEPARATOR);
+            if (fields.length < 7) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(unquote(fields[0]).replace("bills.benchmark.", ""))
+                    .append(' ').append(unquote(fields[1])).append(' ').append(unquote(fields[6]));
+            for (int i = 7; i < fields.length; i++) {
+                key.append(' ').append(unquote(fields[i]));
+            }
+            try {
+                scores.put(key.toString(), Double.parseDouble(unquote(fields[4])));
+            } catch (NumberFormatException e) {
+                System.out.println("Skipping score " + fields[4] + " of " + key + " in " + csvFile);
+            }
+        }
+        return scores;
+    }
+
+    private static String unquote(String field) {
+        return field.length() > 1 && field.startsWith("\"") ? field.substring(1, field.length() - 1) : field;
+    }
+}
@@ -0,0 +1,78 @@
+package bills.benchmark;
+
+import bills.DateUtil;
+import bills.datamodel.Bill;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Compares DateUtil's hand written date codec against DateTimeFormatter, which it
+ * replaced, for the display and file patterns over the due dates of generated bills.
+ *
+ * Usage: java bills.benchmark.DateCodecBenchmark [dateCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class DateCodecBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final DateTimeFormatter DISPLAY_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final DateTimeFormatter FILE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private static long check; // Keeps the results in use
+
+    public static void main(String[] args) {
+        int count = BenchmarkSupport.countArgument(args, 1_000_000);
+        List<Bill> bills = BenchmarkSupport.generateBills(count, 42L);
+        LocalDate[] dates = new LocalDate[count];
+        String[] displayTexts = new String[count];
+        String[] fileTexts = new String[count];
+        for (int i = 0; i < count; i++) {
+            dates[i] = bills.get(i).getDateOfPayment();
+            displayTexts[i] = DISPLAY_FORMATTER.format(dates[i]);
+            fileTexts[i] = FILE_FORMATTER.format(dates[i]);
+        }
+        bills = null;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = BenchmarkSupport.allocatedBytes();
+            long start = System.nanoTime();
+            for (LocalDate date : dates) {
+                check += DISPLAY_FORMATTER.format(date).length() + FILE_FORMATTER.format(date).length();
+            }
+            report("format DateTimeFormatter", 2 * count, System.nanoTime() - start, allocated);
+
+            allocated = BenchmarkSupport.allocatedBytes();
+            start = System.nanoTime();
+            for (LocalDate date : dates) {
+                check += DateUtil.format(date).length() + DateUtil.formatFileDate(date).length();
+            }
+            report("format DateUtil         ", 2 * count, System.nanoTime() - start, allocated);
+
+            allocated = BenchmarkSupport.allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                check += DISPLAY_FORMATTER.parse(displayTexts[i], LocalDate::from).getDayOfMonth()
+                        + FILE_FORMATTER.parse(fileTexts[i], LocalDate::from).getDayOfMonth();
+            }
+            report("parse  DateTimeFormatter", 2 * count, System.nanoTime() - start, allocated);
+
+            allocated = BenchmarkSupport.allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                check += DateUtil.parse(displayTexts[i]).getDayOfMonth()
+                        + DateUtil.parseFileDate(fileTexts[i]).getDayOfMonth();
+            }
+            report("parse  DateUtil         ", 2 * count, System.nanoTime() - start, allocated);
+        }
+        System.out.println(check == 0 ? "" : "done");
+    }
+
+    private static void report(String codec, int dates, long nanos, long allocatedBefore) {
+        long bytes = BenchmarkSupport.allocatedBytes() - allocatedBefore;
+        System.out.printf("%s  %,7.1f ns/date  %,5d bytes/date%n", codec, (double) nanos / dates, bytes / dates);
+    }
+}
@@ -0,0 +1,56 @@
+package bills.benchmark;
+
+import bills.DateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for formatting and parsing the dates shown in the bills table,
+ * cycling through a thousand weekly dates so no single date is cached by the CPU.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateUtilBenchmark {
+
+    private static final int DATES = 1024;
+
+    private final LocalDate[] dates = new LocalDate[DATES];
+    private final String[] texts = new String[DATES];
+    private int next;
+
+    @Setup
+    public void makeDates() {
+        for (int i = 0; i < DATES; i++) {
+            dates[i] = LocalDate.of(2015, 1, 1).plusDays(i * 7L);
+            texts[i] = DateUtil.format(dates[i]);
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        return DateUtil.format(dates[next++ & (DATES - 1)]);
+    }
+
+    @Benchmark
+    public LocalDate parse() {
+        return DateUtil.parse(texts[next++ & (DATES - 1)]);
+    }
+}
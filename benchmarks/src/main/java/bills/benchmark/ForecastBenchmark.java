@@ -0,0 +1,48 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillForecast;
+import bills.datamodel.Recurrence;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Times a ten year cash-flow forecast over repeating bills, and the allocation it makes.
+ *
+ * Usage: java bills.benchmark.ForecastBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class ForecastBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int count = BenchmarkSupport.countArgument(args, 5_000);
+        List<Bill> bills = BenchmarkSupport.generateBills(count, 42L);
+        Recurrence[] recurrences = Recurrence.values();
+        for (int i = 0; i < bills.size(); i++) {
+            bills.get(i).setRecurrence(recurrences[i % recurrences.length]);
+        }
+        LocalDate from = LocalDate.of(2026, 1, 1);
+        LocalDate to = from.plusYears(10).minusDays(1);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = BenchmarkSupport.allocatedBytes();
+            long start = System.nanoTime();
+            BillForecast.CashFlow cashFlow = BillForecast.cashFlow(bills, from, to);
+            long nanos = System.nanoTime() - start;
+            long bytes = BenchmarkSupport.allocatedBytes() - allocated;
+
+            start = System.nanoTime();
+            long payments = BillForecast.occurrences(bills, from, to).count();
+            long streamNanos = System.nanoTime() - start;
+
+            System.out.printf("cash flow %6.2f ms %,10d bytes | %,d payments streamed in %6.2f ms | Wayne 2030: %.2f%n",
+                    nanos / 1e6, bytes, payments, streamNanos / 1e6,
+                    cashFlow.totalCents("Wayne", LocalDate.of(2030, 1, 1), LocalDate.of(2030, 12, 31)) / 100.0);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package bills.benchmark;
+
+import bills.BillServer;
+import bills.datamodel.BillData;
+import bills.datamodel.BillUpdater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load test for BillServer on localhost. Client threads send a mix of requests for a
+ * fixed time and the requests per second and latency percentiles are reported for each
+ * kind: listing a month of bills, reading the totals with and without a matching
+ * If-None-Match, fetching one bill, and adding and editing bills.
+ *
+ * Usage: java bills.benchmark.HttpLoadTest [billCount] [clients] [seconds]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class HttpLoadTest {
+
+    private static final String[] KINDS = {"month", "totals", "totals 304", "bill", "add", "edit"};
+    private static final int MONTH = 0, TOTALS = 1, TOTALS_CACHED = 2, BILL = 3, ADD = 4, EDIT = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 100_000);
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        BillServer.setNoDelayDefault();
+
+        Path file = Files.createTempFile("bills-", ".xml");
+        file.toFile().deleteOnExit();
+        BillData data = new BillData(file.toString());
+        ExecutorService owner = Executors.newSingleThreadExecutor(task -> new Thread(task, "owner"));
+        BillServer server = owner.submit(() -> {
+            data.addBills(BenchmarkSupport.generateBills(count, 42L));
+            BillUpdater updater = new BillUpdater(data, owner, null);
+            return new BillServer(data, updater, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }).get();
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        long highestId = count;
+        System.out.printf("%,d bills, %d clients, %d s%n", count, clients, seconds);
+
+        // Each client keeps its own latencies per kind, merged at the end.
+        List<long[][]> latencies = new ArrayList<>();
+        List<int[]> counts = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        for (int c = 0; c < clients; c++) {
+            long[][] clientLatencies = new long[KINDS.length][1 << 16];
+            int[] clientCounts = new int[KINDS.length];
+            latencies.add(clientLatencies);
+            counts.add(clientCounts);
+            Random random = new Random(c);
+            Thread client = new Thread(() -> {
+                String etag = null;
+                try {
+                    while (System.nanoTime() < end) {
+                        int kind = random.nextInt(20);
+                        kind = kind < 4 ? MONTH : kind < 8 ? TOTALS : kind < 12 ? TOTALS_CACHED : kind < 17 ? BILL : kind < 19 ? EDIT : ADD;
+                        long start = System.nanoTime();
+                        switch (kind) {
+                            case MONTH: {
+                                int year = 2015 + random.nextInt(10);
+                                int month = 1 + random.nextInt(12);
+                                String from = String.format("%d-%02d-01", year, month);
+                                String to = String.format("%d-%02d-28", year, month);
+                                request("GET", base + "/bills?from=" + from + "&to=" + to, null, null, 200);
+                                break;
+                            }
+                            case TOTALS:
+                                etag = request("GET", base + "/totals", null, null, 200);
+                                break;
+                            case TOTALS_CACHED:
+                                if (etag == null) {
+                                    etag = request("GET", base + "/totals", null, null, 200);
+                                } else {
+                                    request("GET", base + "/totals", etag, null, 0); // 304 unless something changed
+                                }
+                                break;
+                            case BILL:
+                                request("GET", base + "/bills/" + (1 + random.nextInt((int) highestId)), null, null, 0);
+                                break;
+                            case ADD:
+                                request("POST", base + "/bills", null,
+                                        "{\"name\":\"Load test\",\"dateOfPayment\":\"2020-06-01\",\"amount\":12.50}", 201);
+                                break;
+                            default:
+                                request("PUT", base + "/bills/" + (1 + random.nextInt((int) highestId)), null,
+                                        "{\"notes\":\"edited " + random.nextInt(1000) + "\"}", 0);
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        long[] kindLatencies = clientLatencies[kind];
+                        if (clientCounts[kind] == kindLatencies.length) {
+                            clientLatencies[kind] = kindLatencies = Arrays.copyOf(kindLatencies, kindLatencies.length * 2);
+                        }
+                        kindLatencies[clientCounts[kind]++] = elapsed;
+                    }
+                } catch (IOException e) {
+                    System.out.println("Problem sending request: " + e);
+                    e.printStackTrace();
+                }
+            }, "client-" + c);
+            threads.add(client);
+        }
+        long start = System.nanoTime();
+        for (Thread client : threads) {
+            client.start();
+        }
+        for (Thread client : threads) {
+            client.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        server.stop();
+        owner.shutdown();
+
+        long total = 0;
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            int kindCount = 0;
+            for (int[] clientCounts : counts) {
+                kindCount += clientCounts[kind];
+            }
+            long[] merged = new long[kindCount];
+            int at = 0;
+            for (int c = 0; c < clients; c++) {
+                System.arraycopy(latencies.get(c)[kind], 0, merged, at, counts.get(c)[kind]);
+                at += counts.get(c)[kind];
+            }
+            Arrays.sort(merged);
+            total += kindCount;
+            System.out.printf("%-11s %,9d requests %,9.0f/s   p50 %,8.2f ms   p99 %,8.2f ms%n", KINDS[kind],
+                    kindCount, kindCount / elapsedSeconds, percentile(merged, 0.50), percentile(merged, 0.99));
+        }
+        System.out.printf("all         %,9d requests %,9.0f/s%n", total, total / elapsedSeconds);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+
+    // Send one request and read the whole answer. Returns the ETag, checking the status
+    // unless expected is 0.
+    private static String request(String method, String url, String ifNoneMatch, String body, int expected) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        if (expected != 0 && status != expected) {
+            throw new IOException(method + " " + url + " answered " + status);
+        }
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try (in) {
+                in.transferTo(new ByteArrayOutputStream()); // Read to the end so the connection is reused
+            }
+        }
+        return connection.getHeaderField("ETag");
+    }
+}
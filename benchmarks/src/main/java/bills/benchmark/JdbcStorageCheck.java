@@ -0,0 +1,214 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+import bills.datamodel.JdbcBillStorage;
+import bills.datamodel.Recurrence;
+import javafx.collections.FXCollections;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks JdbcBillStorage against a real database, H2, both in memory and in a file: bills
+ * saved and loaded again come back the same after adds, edits, deletes and a sort, the
+ * queries agree with the bills, migrating from XML copies every bill once, and in-memory
+ * and server URLs keep no journal.
+ *
+ * Usage: java bills.benchmark.JdbcStorageCheck [billCount]
+ * Exits with status 1 if any check fails.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class JdbcStorageCheck {
+
+    private static final LocalDate FROM = LocalDate.of(2019, 3, 1);
+    private static final LocalDate TO = LocalDate.of(2019, 3, 31);
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 5_000);
+        checkLocations();
+        checkRoundTrips("jdbc:h2:mem:bills-check;DB_CLOSE_DELAY=-1", count);
+
+        Path directory = Files.createTempDirectory("bills-check-");
+        try {
+            checkRoundTrips("jdbc:h2:file:" + directory.resolve("bills"), count);
+            checkMigration("jdbc:h2:file:" + directory.resolve("migrated"), count);
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+
+        System.out.printf("%,d bills, %d failures%n", count, failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // The journal goes beside a database file and nowhere for other databases.
+    private static void checkLocations() {
+        String home = System.getProperty("user.home");
+        String[][] expected = {
+                {"jdbc:h2:file:/data/bills", "/data/bills"},
+                {"jdbc:h2:/data/bills;MODE=MySQL", "/data/bills"},
+                {"jdbc:h2:~/bills", home + "/bills"},
+                {"jdbc:sqlite:/data/bills.db", "/data/bills.db"},
+                {"jdbc:h2:mem:bills", null},
+                {"jdbc:h2:tcp://localhost/~/bills", null},
+                {"jdbc:sqlite::memory:", null},
+                {"jdbc:sqlite:", null},
+                {"jdbc:sqlite:file:bills?mode=memory&cache=shared", null},
+                {"jdbc:postgresql://localhost/bills", null}};
+        for (String[] url : expected) {
+            Path path = new JdbcBillStorage(url[0]).getPath();
+            if (!Objects.equals(path, url[1] == null ? null : Paths.get(url[1]))) {
+                fail(url[0] + " keeps its journal beside " + path + ", not " + url[1]);
+            }
+        }
+        BillData data = new BillData("jdbc:h2:mem:journal-check");
+        data.setJournaled(true);
+        if (data.isJournaled()) {
+            fail("an in-memory database is journaled");
+        }
+    }
+
+    private static void checkRoundTrips(String url, int count) throws IOException {
+        BillData data = new BillData(url);
+        data.loadBills();
+        data.addBills(generate(count, 1L));
+        data.saveBills();
+        compare(url + " first save", data, url);
+
+        Random random = new Random(2L);
+        List<Bill> bills = data.getBills();
+        data.transaction(() -> {
+            for (int i = 0; i < count / 10; i++) {
+                Bill bill = bills.get(random.nextInt(bills.size()));
+                bill.setAmount(bill.getAmount() + 1);
+                bill.setNotes(i % 2 == 0 ? null : "edited " + i);
+                bill.setDateChanged(i % 3 == 0 ? null : LocalDate.of(2021, 1, 1).plusDays(i));
+                bill.setRecurrence(Recurrence.values()[i % Recurrence.values().length]);
+            }
+            for (int i = 0; i < count / 20; i++) {
+                data.deleteBill(bills.get(random.nextInt(bills.size())));
+            }
+        });
+        data.addBills(generate(count / 10, 3L));
+        data.saveBills();
+        compare(url + " after edits", data, url);
+
+        FXCollections.sort(data.getBills(), Comparator.comparing(Bill::getDateOfPayment));
+        data.saveBills();
+        compare(url + " after sorting", data, url);
+
+        try (JdbcBillStorage storage = new JdbcBillStorage(url)) {
+            long cents = 0;
+            List<Long> due = new ArrayList<>();
+            for (Bill bill : bills) {
+                if (!bill.getDateOfPayment().isBefore(FROM) && !bill.getDateOfPayment().isAfter(TO)) {
+                    cents += Math.round(bill.getAmount() * 100);
+                    due.add(bill.getId());
+                }
+            }
+            if (storage.totalCentsDueBetween(FROM, TO) != cents) {
+                fail(url + " total due " + storage.totalCentsDueBetween(FROM, TO) + ", bills add up to " + cents);
+            }
+            List<Long> found = ids(storage.dueBetween(FROM, TO));
+            if (!found.containsAll(due) || found.size() != due.size()) {
+                fail(url + " finds " + found.size() + " bills due, not " + due.size());
+            }
+            if (!ids(storage.forAccount("Nicki")).equals(ids(filter(bills, "Nicki", null)))) {
+                fail(url + " finds different bills for an account");
+            }
+            if (!ids(storage.namedStartingWith("Co")).equals(ids(filter(bills, null, "Co")))) {
+                fail(url + " finds different bills by name");
+            }
+        }
+    }
+
+    private static void checkMigration(String url, int count) throws IOException {
+        Path xmlFile = BenchmarkSupport.writeBillsFile(count);
+        BillData xml = new BillData(xmlFile.toString());
+        xml.loadBills();
+        try (JdbcBillStorage storage = new JdbcBillStorage(url)) {
+            if (storage.migrateFrom(xmlFile) != count) {
+                fail(url + " did not migrate " + count + " bills");
+            }
+            try {
+                storage.migrateFrom(xmlFile);
+                fail(url + " migrated into a database with bills");
+            } catch (IOException e) {
+                // Expected, the database already has the bills
+            }
+        }
+        compare(url + " migrated", xml, url);
+    }
+
+    // Load the database afresh and compare every field of every bill, in order.
+    private static void compare(String what, BillData expected, String url) {
+        BillData loaded = new BillData(url);
+        loaded.loadBills();
+        List<Bill> bills = expected.getBills();
+        if (loaded.getBills().size() != bills.size()) {
+            fail(what + ": loaded " + loaded.getBills().size() + " bills, saved " + bills.size());
+            return;
+        }
+        for (int i = 0; i < bills.size(); i++) {
+            Bill saved = bills.get(i);
+            Bill read = loaded.getBills().get(i);
+            if (saved.getId() != read.getId() || !Objects.equals(saved.getName(), read.getName())
+                    || !Objects.equals(saved.getDateOfPayment(), read.getDateOfPayment())
+                    || Math.round(saved.getAmount() * 100) != Math.round(read.getAmount() * 100)
+                    || !Objects.equals(saved.getBankAccount(), read.getBankAccount())
+                    || !Objects.equals(saved.getNotes(), read.getNotes())
+                    || !Objects.equals(saved.getDateStarted(), read.getDateStarted())
+                    || !Objects.equals(saved.getDateChanged(), read.getDateChanged())
+                    || Math.round(saved.getPreviousAmount() * 100) != Math.round(read.getPreviousAmount() * 100)
+                    || saved.getRecurrence() != read.getRecurrence()) {
+                fail(what + ": bill " + i + " saved as " + saved + " (" + saved.getId() + ") loaded as "
+                        + read + " (" + read.getId() + ")");
+                return;
+            }
+        }
+    }
+
+    private static List<Bill> generate(int count, long seed) {
+        List<Bill> bills = BenchmarkSupport.generateBills(count, seed);
+        bills.get(0).setDateStarted(null); // Missing dates are stored as NULL
+        return bills;
+    }
+
+    private static List<Bill> filter(List<Bill> bills, String account, String namePrefix) {
+        return bills.stream()
+                .filter(bill -> account == null || account.equals(bill.getBankAccount()))
+                .filter(bill -> namePrefix == null || bill.getName().startsWith(namePrefix))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Bill> bills) {
+        return bills.stream().map(Bill::getId).collect(Collectors.toList());
+    }
+
+    private static void fail(String message) {
+        if (++failures <= 10) {
+            System.out.println("FAILED: " + message);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares BillData.loadBills(), serial and parallel, against the original XMLEventReader loader.
+ * Reports bills per second and bytes allocated per bill.
+ *
+ * Usage: java bills.benchmark.LoadBillsBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class LoadBillsBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 200_000);
+        Path file = BenchmarkSupport.writeBillsFile(count);
+        System.out.printf("%,d bills, %,d bytes%n", count, Files.size(file));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = BenchmarkSupport.allocatedBytes();
+            long start = System.nanoTime();
+            int eventCount = loadWithEventReader(file).size();
+            report("event reader ", eventCount, System.nanoTime() - start,
+                    BenchmarkSupport.allocatedBytes() - allocated);
+
+            allocated = BenchmarkSupport.allocatedBytes();
+            start = System.nanoTime();
+            BillData data = new BillData(file.toString());
+            data.loadBills();
+            report("stream reader", data.getBills().size(), System.nanoTime() - start,
+                    BenchmarkSupport.allocatedBytes() - allocated);
+
+            // Allocation is only counted for this thread, not the pool's.
+            start = System.nanoTime();
+            data = new BillData(file.toString());
+            data.setParallelLoading(true);
+            data.loadBills();
+            report(String.format("parallel x%-3d", ForkJoinPool.commonPool().getParallelism()), data.getBills().size(),
+                    System.nanoTime() - start, 0);
+        }
+    }
+
+    private static void report(String loader, int bills, long nanos, long bytes) {
+        System.out.printf("%s  %,12.0f bills/s  %,8d bytes/bill%n",
+                loader, bills / (nanos / 1e9), bytes / Math.max(1, bills));
+    }
+
+    /**
+     * The loader as it was before the cursor based rewrite - kept here as the baseline.
+     */
+    private static List<Bill> loadWithEventReader(Path file) throws IOException, XMLStreamException {
+        List<Bill> loaded = new ArrayList<>();
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            XMLEventReader eventReader = inputFactory.createXMLEventReader(in);
+            Bill bill = null;
+            while (eventReader.hasNext()) {
+                XMLEvent event = eventReader.nextEvent();
+                if (event.isStartElement()) {
+                    String element = event.asStartElement().getName().getLocalPart();
+                    if (element.equals("bill")) {
+                        bill = new Bill();
+                        continue;
+                    }
+                    if (element.equals("name")) {
+                        bill.setName(eventReader.nextEvent().asCharacters().getData());
+                    } else if (element.equals("date_due")) {
+                        bill.setDateOfPayment(LocalDate.parse(eventReader.nextEvent().asCharacters().getData(),
+                                DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                    } else if (element.equals("amount")) {
+                        bill.setAmount(Double.parseDouble(eventReader.nextEvent().asCharacters().getData()));
+                    } else if (element.equals("notes")) {
+                        bill.setNotes(eventReader.nextEvent().asCharacters().getData());
+                    } else if (element.equals("bank_account")) {
+                        bill.setBankAccount(eventReader.nextEvent().asCharacters().getData());
+                    } else if (element.equals("date_started")) {
+                        bill.setDateStarted(LocalDate.parse(eventReader.nextEvent().asCharacters().getData(),
+                                DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                    } else if (element.equals("date_changed")) {
+                        bill.setDateChanged(LocalDate.parse(eventReader.nextEvent().asCharacters().getData(),
+                                DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                    } else if (element.equals("previous_amount")) {
+                        bill.setPreviousAmount(Double.parseDouble(eventReader.nextEvent().asCharacters().getData()));
+                    }
+                } else if (event.isEndElement()
+                        && event.asEndElement().getName().getLocalPart().equals("bill")) {
+                    loaded.add(bill);
+                }
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,95 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillStrings;
+import bills.datamodel.XmlBillStorage;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reports the heap retained per bill when a generated bills file is loaded, with text
+ * pooling by BillStrings switched off and then on, and how much of it is the bills'
+ * Strings. A last run asks every bill for all its JavaFX properties, as the table and
+ * bindings would, to show what creating them only when asked for saves.
+ *
+ * Usage: java bills.benchmark.MemoryFootprint [billCount]
+ * Give the JVM heap for twice the bills, about 2 GB for a million.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class MemoryFootprint {
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 200_000);
+        Path file = BenchmarkSupport.writeBillsFile(count);
+        XmlBillStorage storage = new XmlBillStorage(file);
+        System.out.printf("%,d bills%n", count);
+        System.out.printf("%-16s %14s %14s %16s %14s%n", "run", "bytes/bill", "strings/bill", "string bytes/bill", "distinct");
+
+        boolean wasInterning = BillStrings.isInterning();
+        String[] runs = {"pooling off", "pooling on", "with properties"};
+        for (int run = 0; run < runs.length; run++) {
+            BillStrings.setInterning(run > 0);
+            long before = usedHeapAfterGc();
+            List<Bill> bills = new ArrayList<>(count);
+            storage.load(bills);
+            if (run == 2) {
+                for (Bill bill : bills) {
+                    makeProperties(bill);
+                }
+            }
+            long retained = usedHeapAfterGc() - before;
+
+            Set<String> strings = Collections.newSetFromMap(new IdentityHashMap<>());
+            long stringBytes = 0;
+            for (Bill bill : bills) {
+                for (String text : new String[] {bill.getName(), bill.getBankAccount(), bill.getNotes()}) {
+                    if (text != null && strings.add(text)) {
+                        stringBytes += stringSize(text);
+                    }
+                }
+            }
+            System.out.printf("%-16s %,14.1f %,14.2f %,16.1f %,14d%n", runs[run],
+                    retained / (double) count, strings.size() / (double) count,
+                    stringBytes / (double) count, strings.size());
+            if (bills.size() != count) {
+                throw new IllegalStateException("Loaded " + bills.size() + " bills");
+            }
+        }
+        BillStrings.setInterning(wasInterning);
+    }
+
+    private static void makeProperties(Bill bill) {
+        bill.nameProperty();
+        bill.dateOfPaymentProperty();
+        bill.amountProperty();
+        bill.bankAccountProperty();
+        bill.notesProperty();
+        bill.dateStartedProperty();
+        bill.dateChangedProperty();
+        bill.previousAmountProperty();
+        bill.recurrenceProperty();
+    }
+
+    // Heap held by a String and its byte array, Latin-1 text, compressed pointers.
+    private static long stringSize(String text) {
+        long header = 24;
+        long array = 16 + text.length();
+        return header + ((array + 7) & ~7);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
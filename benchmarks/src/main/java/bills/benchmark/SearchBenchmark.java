@@ -0,0 +1,72 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+import bills.datamodel.BillSearchIndex;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Times each keystroke of a type-ahead search against a full scan of names and notes,
+ * both giving every match and giving the first 1,000 as the main window does. The index
+ * is built in the background as the main window builds it, and the time the owner
+ * thread spends on it is reported.
+ *
+ * Usage: java bills.benchmark.SearchBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class SearchBenchmark {
+
+    private static final String[] TYPED = {"c", "co", "cou", "coun", "counc", "council", "council t", "council ta"};
+    private static final int LIMIT = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 1_000_000);
+        BillData data = new BillData();
+        ExecutorService owner = Executors.newSingleThreadExecutor(task -> new Thread(task, "owner"));
+        owner.submit(() -> data.getBills().addAll(BenchmarkSupport.generateBills(count, 42L))).get();
+
+        long[] ownerNanos = new long[1];
+        long start = System.nanoTime();
+        BillSearchIndex index = data.buildSearchIndexLater(task -> owner.execute(() -> {
+            long taskStart = System.nanoTime();
+            task.run();
+            ownerNanos[0] += System.nanoTime() - taskStart;
+        })).get();
+        owner.submit(() -> { }).get(); // The task completing the index has finished timing itself
+        owner.shutdown();
+        System.out.printf("index built in %.1f ms, %.1f ms of it on the owner thread%n",
+                (System.nanoTime() - start) / 1e6, ownerNanos[0] / 1e6);
+
+        for (int round = 0; round < 3; round++) {
+            BillSearchIndex.Search search = index.newSearch();
+            BillSearchIndex.Search limited = index.newSearch(LIMIT);
+            for (String query : TYPED) {
+                start = System.nanoTime();
+                List<Bill> found = search.update(query);
+                long indexed = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                List<Bill> first = limited.update(query);
+                long firstNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int scanned = 0;
+                String lower = query.toLowerCase();
+                for (Bill bill : data.getBills()) {
+                    if (bill.getName().toLowerCase().contains(lower) || bill.getNotes().toLowerCase().contains(lower)) {
+                        scanned++;
+                    }
+                }
+                long scan = System.nanoTime() - start;
+                System.out.printf("%-12s %,9d bills %8.2f ms   first %,5d %8.3f ms   (scan %,9d bills %8.2f ms)%n",
+                        "'" + query + "'", found.size(), indexed / 1e6, first.size(), firstNanos / 1e6,
+                        scanned, scan / 1e6);
+            }
+        }
+    }
+}
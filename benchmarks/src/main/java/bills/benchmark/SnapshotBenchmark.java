@@ -0,0 +1,54 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BinaryBillStorage;
+import bills.datamodel.XmlBillStorage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares saving and loading the same bills as XML and as a binary snapshot.
+ *
+ * Usage: java bills.benchmark.SnapshotBenchmark [billCount]
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class SnapshotBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 1_000_000);
+        List<Bill> bills = BenchmarkSupport.generateBills(count, 42L);
+
+        Path xmlFile = Files.createTempFile("bills-", ".xml");
+        Path binaryFile = Files.createTempFile("bills-", BinaryBillStorage.EXTENSION);
+        xmlFile.toFile().deleteOnExit();
+        binaryFile.toFile().deleteOnExit();
+        XmlBillStorage xml = new XmlBillStorage(xmlFile);
+        BinaryBillStorage binary = new BinaryBillStorage(binaryFile);
+
+        long start = System.nanoTime();
+        xml.save(bills, 0);
+        System.out.printf("xml    save %,8.1f ms  %,d bytes%n", (System.nanoTime() - start) / 1e6, Files.size(xmlFile));
+        start = System.nanoTime();
+        binary.save(bills, 0);
+        System.out.printf("binary save %,8.1f ms  %,d bytes%n", (System.nanoTime() - start) / 1e6, Files.size(binaryFile));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Bill> loaded = new ArrayList<>();
+            start = System.nanoTime();
+            xml.load(loaded);
+            System.out.printf("xml    load %,8.1f ms  %,d bills%n", (System.nanoTime() - start) / 1e6, loaded.size());
+
+            loaded = new ArrayList<>();
+            start = System.nanoTime();
+            binary.load(loaded);
+            System.out.printf("binary load %,8.1f ms  %,d bills%n", (System.nanoTime() - start) / 1e6, loaded.size());
+        }
+    }
+}
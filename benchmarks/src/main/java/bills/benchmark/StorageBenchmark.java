@@ -0,0 +1,102 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+import bills.datamodel.JdbcBillStorage;
+import bills.datamodel.XmlBillStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares the XML file against a JDBC database for saving after a few edits and for
+ * finding the bills due in one month. The XML file is rewritten whole and loaded whole
+ * to be searched; the database writes only the changed rows and searches its index.
+ *
+ * Usage: java bills.benchmark.StorageBenchmark [billCount] [jdbcUrl]
+ * The database's driver must be on the module or class path; H2's is on the benchmarks'
+ * class path. The default URL is an H2 database in a new temporary directory.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class StorageBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int EDITS = 10;
+    private static final LocalDate MONTH_START = LocalDate.of(2020, 3, 1);
+    private static final LocalDate MONTH_END = LocalDate.of(2020, 3, 31);
+
+    public static void main(String[] args) throws Exception {
+        int count = BenchmarkSupport.countArgument(args, 100_000);
+        Path dbDirectory = Files.createTempDirectory("bills-" + count + "-");
+        String url = args.length > 1 ? args[1] : "jdbc:h2:file:" + dbDirectory.resolve("bills");
+        Path xmlFile = BenchmarkSupport.writeBillsFile(count);
+        System.out.printf("%,d bills, %,d edited per save%n", count, EDITS);
+
+        try (JdbcBillStorage database = new JdbcBillStorage(url)) {
+            long start = System.nanoTime();
+            database.migrateFrom(xmlFile);
+            System.out.printf("migrate to database  %,10.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+            List<Bill> bills = new ArrayList<>();
+            database.load(bills); // The migrated bills, with the ids the database has for them
+            XmlBillStorage xml = new XmlBillStorage(xmlFile);
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < EDITS; i++) {
+                    Bill bill = bills.get((round * EDITS + i) * 7919 % count);
+                    bill.setAmount(bill.getAmount() + 1);
+                }
+
+                start = System.nanoTime();
+                xml.save(bills, round);
+                long xmlSave = System.nanoTime() - start;
+                start = System.nanoTime();
+                database.save(bills, round);
+                long databaseSave = System.nanoTime() - start;
+                System.out.printf("save        xml %,10.1f ms   database %,10.1f ms%n", xmlSave / 1e6, databaseSave / 1e6);
+
+                start = System.nanoTime();
+                long xmlTotal = xmlMonthTotal(xmlFile);
+                long xmlQuery = System.nanoTime() - start;
+                start = System.nanoTime();
+                long databaseTotal = database.totalCentsDueBetween(MONTH_START, MONTH_END);
+                int due = database.dueBetween(MONTH_START, MONTH_END).size();
+                long databaseQuery = System.nanoTime() - start;
+                System.out.printf("month query xml %,10.1f ms   database %,10.1f ms   %,d bills%s%n",
+                        xmlQuery / 1e6, databaseQuery / 1e6, due, xmlTotal == databaseTotal ? "" : "   TOTALS DIFFER");
+            }
+        } catch (IOException e) {
+            System.out.println("Could not use " + url + ": " + e.getMessage());
+            System.out.println("Put the database's JDBC driver on the module or class path.");
+        } finally {
+            try (Stream<Path> files = Files.list(dbDirectory)) { // H2 adds its own endings to the name
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dbDirectory);
+        }
+    }
+
+    // What the XML file needs: load every bill then look through them.
+    private static long xmlMonthTotal(Path xmlFile) throws IOException {
+        BillData data = new BillData(xmlFile.toString());
+        data.loadBills();
+        long total = 0;
+        List<Bill> due = new ArrayList<>();
+        for (Bill bill : data.getBills()) {
+            LocalDate date = bill.getDateOfPayment();
+            if (!date.isBefore(MONTH_START) && !date.isAfter(MONTH_END)) {
+                due.add(bill);
+                total += Math.round(bill.getAmount() * 100);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,179 @@
+package bills.benchmark;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+import bills.datamodel.BillRecord;
+import bills.datamodel.BillSnapshot;
+import bills.datamodel.BillUpdater;
+import javafx.collections.ListChangeListener;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for BillUpdater: importer threads add, edit and delete bills through it
+ * while reader threads take snapshots and check each one holds together. A single
+ * thread executor stands in for the JavaFX application thread, so it runs headless.
+ * At the end the last snapshot is checked against the bills list itself.
+ *
+ * Usage: java bills.benchmark.UpdaterStress [operationsPerImporter] [importers] [readers]
+ * Exits with status 1 if any check fails.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class UpdaterStress {
+
+    private static final int BILLS_PER_ADD = 10;
+
+    private static final AtomicLong failures = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int operations = BenchmarkSupport.countArgument(args, 20_000);
+        int importers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        Path file = Files.createTempFile("bills-", ".xml");
+        file.toFile().deleteOnExit();
+        BillData data = new BillData(file.toString());
+        ExecutorService owner = Executors.newSingleThreadExecutor(r -> new Thread(r, "owner"));
+        AtomicLong listChanges = new AtomicLong();
+        AtomicLong saveRequests = new AtomicLong();
+        BillUpdater updater = owner.submit(() -> {
+            data.getBills().addListener((ListChangeListener<Bill>) change -> listChanges.incrementAndGet());
+            return new BillUpdater(data, owner, saveRequests::incrementAndGet);
+        }).get();
+
+        AtomicLong added = new AtomicLong();
+        AtomicLong deleted = new AtomicLong();
+        AtomicBoolean importing = new AtomicBoolean(true);
+        AtomicLong snapshotsRead = new AtomicLong();
+
+        List<Thread> readerThreads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Thread reader = new Thread(() -> {
+                long lastVersion = -1;
+                while (importing.get()) {
+                    BillSnapshot snapshot = data.snapshot();
+                    if (snapshot.getVersion() < lastVersion) {
+                        fail("snapshot version went back from " + lastVersion + " to " + snapshot.getVersion());
+                    }
+                    lastVersion = snapshot.getVersion();
+                    check(snapshot);
+                    snapshotsRead.incrementAndGet();
+                }
+            }, "reader-" + r);
+            readerThreads.add(reader);
+            reader.start();
+        }
+
+        long start = System.nanoTime();
+        List<Thread> importerThreads = new ArrayList<>();
+        for (int t = 0; t < importers; t++) {
+            long seed = t;
+            Thread importer = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < operations; i++) {
+                    int choice = random.nextInt(10);
+                    List<BillRecord> known = data.snapshot().getBills();
+                    if (choice < 5 || known.isEmpty()) {
+                        updater.addBills(BenchmarkSupport.generateBills(BILLS_PER_ADD, random.nextLong()));
+                        added.addAndGet(BILLS_PER_ADD);
+                    } else if (choice < 8) {
+                        long id = known.get(random.nextInt(known.size())).getId();
+                        updater.updateBill(id, bill -> bill.setAmount(bill.getAmount() + 1));
+                    } else {
+                        long id = known.get(random.nextInt(known.size())).getId();
+                        updater.submit(bills -> {
+                            if (bills.deleteBill(id)) {
+                                deleted.incrementAndGet();
+                            }
+                        });
+                    }
+                }
+                updater.flush();
+            }, "importer-" + t);
+            importerThreads.add(importer);
+            importer.start();
+        }
+        for (Thread importer : importerThreads) {
+            importer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        importing.set(false);
+        for (Thread reader : readerThreads) {
+            reader.join();
+        }
+
+        owner.submit(() -> checkAgainstList(data, data.snapshot(), added.get() - deleted.get())).get();
+        owner.shutdown();
+
+        long changes = updater.getAppliedChanges();
+        System.out.printf("%,d changes from %d importers in %,.1f ms, %,.0f changes/s%n",
+                changes, importers, elapsed / 1e6, changes / (elapsed / 1e9));
+        System.out.printf("%,d batches, %,d list changes, %,d save requests, %,d snapshots read by %d readers%n",
+                updater.getBatches(), listChanges.get(), saveRequests.get(), snapshotsRead.get(), readers);
+        System.out.printf("%,d bills, %,d failures%n", data.getBills().size(), failures.get());
+        if (listChanges.get() > updater.getBatches()) {
+            fail("more list changes than batches");
+        }
+        if (failures.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    // A snapshot's ids are unique and its total is the sum of its amounts.
+    private static void check(BillSnapshot snapshot) {
+        Set<Long> ids = new HashSet<>();
+        long cents = 0;
+        for (BillRecord record : snapshot.getBills()) {
+            if (!ids.add(record.getId())) {
+                fail("id " + record.getId() + " twice in snapshot " + snapshot.getVersion());
+            }
+            cents += Math.round(record.getAmount() * 100);
+        }
+        if (cents != snapshot.getTotalCents()) {
+            fail("snapshot " + snapshot.getVersion() + " total " + snapshot.getTotalCents() + " but amounts sum to " + cents);
+        }
+    }
+
+    // On the owner thread once everything is applied: the snapshot matches the list.
+    private static void checkAgainstList(BillData data, BillSnapshot snapshot, long expectedSize) {
+        check(snapshot);
+        List<Bill> bills = data.getBills();
+        if (bills.size() != expectedSize || snapshot.size() != expectedSize) {
+            fail("expected " + expectedSize + " bills, list has " + bills.size() + ", snapshot " + snapshot.size());
+            return;
+        }
+        for (int i = 0; i < bills.size(); i++) {
+            Bill bill = bills.get(i);
+            BillRecord record = snapshot.getBills().get(i);
+            if (record.getId() != bill.getId() || record.getAmount() != bill.getAmount()) {
+                fail("snapshot differs from list at " + i + ": " + record + " against " + bill);
+                return;
+            }
+            if (data.getBill(bill.getId()) != bill) {
+                fail("id index wrong for " + bill);
+                return;
+            }
+        }
+        if (Math.round(data.calculateTotal() * 100) != snapshot.getTotalCents()) {
+            fail("list total " + data.calculateTotal() + " but snapshot total " + snapshot.getTotalCents() / 100.0);
+        }
+    }
+
+    private static void fail(String message) {
+        if (failures.incrementAndGet() <= 10) {
+            System.out.println("FAILED: " + message);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package bills;
+
+/**
+ * Helper class for showing amounts of money.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class AmountUtil {
+
+    /**
+     * Returns the amount with two decimal places, rounded to the nearest penny,
+     * without the overhead of String.format.
+     *
+     * @param amount the amount in pounds.
+     * @return formatted string, such as 12.50
+     */
+    public static String format(double amount) {
+        return appendPence(new StringBuilder(12), Math.round(amount * 100)).toString();
+    }
+
+    /**
+     * Appends an amount held in pence as pounds with two decimal places.
+     *
+     * @param text where to append the amount.
+     * @param pence the amount in pence.
+     * @return text, for chaining.
+     */
+    public static StringBuilder appendPence(StringBuilder text, long pence) {
+        if (pence < 0) {
+            text.append('-');
+            pence = -pence;
+        }
+        long fraction = pence % 100;
+        return text.append(pence / 100).append('.').append(fraction < 10 ? "0" : "").append(fraction);
+    }
+}
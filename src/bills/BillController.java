@@ -1,6 +1,8 @@
 package bills;
 
 import bills.datamodel.Bill;
+import bills.datamodel.BillStrings;
+import bills.datamodel.Recurrence;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import java.time.LocalDate;
@@ -24,12 +26,32 @@ public class BillController {
     private ComboBox<String> bankAccount; // Value injected by FXMLLoader
     @FXML
     private TextArea notesField;
+    @FXML
+    private ComboBox<Recurrence> recurrenceField;
 
-    private Bill currentBill = new Bill(); // Will hold details from dialog box entry
+    private final Bill currentBill = new Bill(); // Will hold details from dialog box entry
     private double previousAmount;
+    private String defaultAccount; // Account chosen in the FXML, restored by reset()
 
     public void initialize() {
         dateField.valueProperty().bindBidirectional(currentBill.dateOfPaymentProperty());
+        recurrenceField.getItems().setAll(Recurrence.values());
+        recurrenceField.setValue(Recurrence.NONE);
+        defaultAccount = bankAccount.getValue();
+    }
+
+    /**
+     * Clears the dialog fields back to how they were when first loaded, so the same
+     * dialog can be reused to add another bill.
+     */
+    public void reset() {
+        nameField.clear();
+        dateField.setValue(null);
+        amountField.clear();
+        bankAccount.setValue(defaultAccount);
+        notesField.clear();
+        recurrenceField.setValue(Recurrence.NONE);
+        previousAmount = 0.0;
     }
 
     /**
@@ -48,7 +70,7 @@ public class BillController {
 
         // Retrieve information from dialog text fields and validate each field.
         if (isValidStringField(nameField.getText())) {
-            name = nameField.getText();
+            name = BillStrings.intern(nameField.getText()); // Shared with other bills of the same name
         } else { // Invalid bill object - needs bill name
             return null;
         }
@@ -60,7 +82,7 @@ public class BillController {
         }
 
         if (isValidStringField(notesField.getText())) {
-            notes = notesField.getText();
+            notes = BillStrings.intern(notesField.getText());
         } else {
             notes = " ";
         }
@@ -81,7 +103,9 @@ public class BillController {
 
         // Create new Bill object from entered ino
         LocalDate todaysDate = LocalDate.now();
-        return new Bill(name, dueDate, amount, chosenAccount, notes, todaysDate, todaysDate, 0.00);
+        Bill newBill = new Bill(name, dueDate, amount, chosenAccount, notes, todaysDate, todaysDate, 0.00);
+        newBill.setRecurrence(recurrenceField.getValue());
+        return newBill;
     }
 
     /**
@@ -97,6 +121,7 @@ public class BillController {
         amountField.setText(Double.toString(bill.getAmount()));
         bankAccount.setValue(bill.getBankAccount());
         notesField.setText(bill.getNotes());
+        recurrenceField.setValue(bill.getRecurrence());
         previousAmount = bill.getAmount(); // Current amount stored in case changed
     }
 
@@ -110,7 +135,7 @@ public class BillController {
 
         // Retrieve information from dialog text fields and validate each field.
         if (isValidStringField(nameField.getText())) {
-            bill.setName(nameField.getText());
+            bill.setName(BillStrings.intern(nameField.getText()));
         } else {
             return false; // Invalid updated bill name.
         }
@@ -118,7 +143,7 @@ public class BillController {
         bill.setDateOfPayment(dateField.getValue());
 
         if (isValidStringField(notesField.getText())) {
-            bill.setNotes(notesField.getText());
+            bill.setNotes(BillStrings.intern(notesField.getText()));
         } else {
             bill.setNotes(" ");
         }
@@ -139,6 +164,7 @@ public class BillController {
             chosenAccount = "None";
         }
         bill.setBankAccount(chosenAccount);
+        bill.setRecurrence(recurrenceField.getValue());
 
         LocalDate todaysDate = LocalDate.now();
         bill.setDateChanged(todaysDate);
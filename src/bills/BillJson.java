@@ -0,0 +1,344 @@
+package bills;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillRecord;
+import bills.datamodel.BillStrings;
+import bills.datamodel.Recurrence;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * class BillJson writes bills as JSON objects and reads the fields of a bill sent as one,
+ * for BillServer.
+ *
+ * Dates are ISO, yyyy-mm-dd, and amounts are numbers with two decimal places. Only flat
+ * objects are read, which is all a bill needs.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BillJson {
+
+    private BillJson() {
+    }
+
+    /**
+     * Append a bill as a JSON object.
+     * @param json where to append it.
+     * @param bill the bill.
+     * @return json, for chaining.
+     */
+    static StringBuilder appendBill(StringBuilder json, BillRecord bill) {
+        json.append("{\"id\":").append(bill.getId());
+        appendString(json.append(",\"name\":"), bill.getName());
+        appendDate(json.append(",\"dateOfPayment\":"), bill.getDateOfPayment());
+        AmountUtil.appendPence(json.append(",\"amount\":"), Math.round(bill.getAmount() * 100));
+        appendString(json.append(",\"bankAccount\":"), bill.getBankAccount());
+        appendString(json.append(",\"notes\":"), bill.getNotes());
+        appendDate(json.append(",\"dateStarted\":"), bill.getDateStarted());
+        appendDate(json.append(",\"dateChanged\":"), bill.getDateChanged());
+        AmountUtil.appendPence(json.append(",\"previousAmount\":"), Math.round(bill.getPreviousAmount() * 100));
+        return appendString(json.append(",\"recurrence\":"), bill.getRecurrence().name()).append('}');
+    }
+
+    static StringBuilder appendString(StringBuilder json, String text) {
+        if (text == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"');
+    }
+
+    private static StringBuilder appendDate(StringBuilder json, LocalDate date) {
+        return date == null ? json.append("null") : json.append('"').append(date).append('"');
+    }
+
+    /**
+     * Make a new bill from the fields sent. A name and due date are needed; the rest
+     * default as in the add dialog.
+     * @param fields fields read by parseObject().
+     * @return the new bill, without an id.
+     * @throws IllegalArgumentException if a field is missing or has the wrong type.
+     */
+    static Bill newBill(Map<String, Object> fields) {
+        if (!(fields.get("name") instanceof String) || fields.get("dateOfPayment") == null) {
+            throw new IllegalArgumentException("A new bill needs a name and a dateOfPayment");
+        }
+        LocalDate today = LocalDate.now();
+        Bill bill = new Bill(null, null, 0.0, "None", " ", today, today, 0.0);
+        applyFields(bill, fields);
+        return bill;
+    }
+
+    /**
+     * Change the fields sent and leave the rest. A new amount keeps the old one as the
+     * previous amount, and the bill is marked changed today, as the edit dialog does.
+     * @param bill the bill to edit.
+     * @param fields fields read by parseObject().
+     * @throws IllegalArgumentException if a field has the wrong type, before anything is changed.
+     */
+    static void editBill(Bill bill, Map<String, Object> fields) {
+        double oldAmount = bill.getAmount();
+        applyFields(bill, fields);
+        if (fields.containsKey("amount") && !fields.containsKey("previousAmount") && bill.getAmount() != oldAmount) {
+            bill.setPreviousAmount(oldAmount);
+        }
+        if (!fields.containsKey("dateChanged")) {
+            bill.setDateChanged(LocalDate.now());
+        }
+    }
+
+    // Check every field before setting any, so a bad request changes nothing.
+    private static void applyFields(Bill bill, Map<String, Object> fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            String name = field.getKey();
+            Object value = field.getValue();
+            switch (name) {
+                case "id":
+                    break; // Given by BillData, never changed
+                case "name":
+                case "bankAccount":
+                case "notes":
+                    if (value != null && !(value instanceof String)) {
+                        throw new IllegalArgumentException(name + " must be a string");
+                    }
+                    values.put(name, BillStrings.intern((String) value));
+                    break;
+                case "dateOfPayment":
+                    if (value == null) {
+                        throw new IllegalArgumentException("dateOfPayment cannot be null");
+                    }
+                    values.put(name, date(name, value));
+                    break;
+                case "dateStarted":
+                case "dateChanged":
+                    values.put(name, value == null ? null : date(name, value));
+                    break;
+                case "amount":
+                case "previousAmount":
+                    if (!(value instanceof BigDecimal)) {
+                        throw new IllegalArgumentException(name + " must be a number");
+                    }
+                    values.put(name, ((BigDecimal) value).doubleValue());
+                    break;
+                case "recurrence":
+                    try {
+                        values.put(name, Recurrence.valueOf(String.valueOf(value)));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("recurrence must be one of NONE, MONTHLY, QUARTERLY, YEARLY");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field: " + name);
+            }
+        }
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            switch (value.getKey()) {
+                case "name":
+                    bill.setName((String) value.getValue());
+                    break;
+                case "bankAccount":
+                    bill.setBankAccount((String) value.getValue());
+                    break;
+                case "notes":
+                    bill.setNotes((String) value.getValue());
+                    break;
+                case "dateOfPayment":
+                    bill.setDateOfPayment((LocalDate) value.getValue());
+                    break;
+                case "dateStarted":
+                    bill.setDateStarted((LocalDate) value.getValue());
+                    break;
+                case "dateChanged":
+                    bill.setDateChanged((LocalDate) value.getValue());
+                    break;
+                case "amount":
+                    bill.setAmount((Double) value.getValue());
+                    break;
+                case "previousAmount":
+                    bill.setPreviousAmount((Double) value.getValue());
+                    break;
+                case "recurrence":
+                    bill.setRecurrence((Recurrence) value.getValue());
+                    break;
+            }
+        }
+    }
+
+    static LocalDate date(String name, Object value) {
+        try {
+            return LocalDate.parse(String.valueOf(value));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be a date, yyyy-mm-dd");
+        }
+    }
+
+    /**
+     * Read a JSON object whose values are strings, numbers, true, false or null.
+     * @param text the JSON.
+     * @return the fields in order, numbers as BigDecimal.
+     * @throws IllegalArgumentException if the text is not such an object.
+     */
+    static Map<String, Object> parseObject(String text) {
+        return new Parser(text).object();
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int at;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                at++;
+            } else {
+                do {
+                    skipSpace();
+                    String name = string();
+                    expect(':');
+                    fields.put(name, value());
+                } while (next() == ',');
+                at--;
+                expect('}');
+            }
+            skipSpace();
+            if (at < text.length()) {
+                throw error("Unexpected text after the object");
+            }
+            return fields;
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                int start = at;
+                while (at < text.length() && "+-0123456789.eE".indexOf(text.charAt(at)) >= 0) {
+                    at++;
+                }
+                try {
+                    return new BigDecimal(text.substring(start, at));
+                } catch (NumberFormatException e) {
+                    throw error("Bad number");
+                }
+            }
+            for (String word : new String[] {"true", "false", "null"}) {
+                if (text.startsWith(word, at)) {
+                    at += word.length();
+                    return word.equals("null") ? null : Boolean.valueOf(word);
+                }
+            }
+            throw error("Expected a string, number, true, false or null");
+        }
+
+        private String string() {
+            if (peek() != '"') {
+                throw error("Expected a string");
+            }
+            at++;
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (at >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(at++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (at >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = text.charAt(at++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (at + 4 > text.length()) {
+                            throw error("Bad escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Bad escape");
+                        }
+                        at += 4;
+                        break;
+                    default:
+                        value.append(escaped); // \" \\ \/
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private char next() {
+            char c = peek();
+            at++;
+            return c;
+        }
+
+        private char peek() {
+            skipSpace();
+            return at < text.length() ? text.charAt(at) : 0;
+        }
+
+        private void skipSpace() {
+            while (at < text.length() && Character.isWhitespace(text.charAt(at))) {
+                at++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at character " + at);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package bills;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+import bills.datamodel.BillRecord;
+import bills.datamodel.BillSnapshot;
+import bills.datamodel.BillUpdater;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * class BillServer is an optional HTTP interface to a BillData for other programs on the
+ * same machine, using the JDK's built in server.
+ *
+ *   GET    /bills[?from=yyyy-mm-dd&amp;to=yyyy-mm-dd]   the bills, or those due between the dates
+ *   GET    /bills/{id}                             one bill
+ *   GET    /totals[?from=...&amp;to=...]                number and total of the bills, per account
+ *   POST   /bills                                  add the bill in the body, answers with its id
+ *   PUT    /bills/{id}                             change the fields in the body
+ *   DELETE /bills/{id}                             remove a bill
+ *
+ * Reads are answered from a BillData snapshot, written straight to the response as
+ * JSON without building it in memory first. Every response to a GET carries the
+ * snapshot version as its ETag, and a request whose If-None-Match still matches is
+ * answered 304 with no body. Writes go through a BillUpdater and are answered once the
+ * batch they were in has been applied. A POST, PUT or DELETE must have a Content-Type of
+ * application/json, or is answered 415, and a Host of localhost, 127.x.x.x or [::1], or
+ * is answered 403, so a web page the user visits cannot change the bills. Each request
+ * has a thread of its own: a virtual thread when the JDK has them, otherwise one from a
+ * pool. Bills are found by id, and by due date, through the snapshot's indexes rather
+ * than by reading every bill.
+ *
+ * Launchers should call setNoDelayDefault() before creating a server, or start the JVM
+ * with -Dsun.net.httpserver.nodelay=true.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillServer {
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+
+    private final BillData data;
+    private final BillUpdater updater;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String etagPrefix = Long.toHexString(System.currentTimeMillis()) + "-"; // Versions restart with the process
+    private volatile Totals lastTotals; // Last totals answered, reused until the bills change
+
+    /**
+     * @param data the bills to serve. data.snapshot() must already have been called on
+     *             the thread that changes the bills, as a BillUpdater does.
+     * @param updater makes the changes asked for.
+     * @param address where to listen, port 0 for any free port. Nothing is authenticated,
+     *                so this should be a loopback address.
+     * @throws IOException if the address cannot be bound.
+     */
+    public BillServer(BillData data, BillUpdater updater, InetSocketAddress address) throws IOException {
+        this.data = data;
+        this.updater = updater;
+        server = HttpServer.create(address, 0);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/bills", this::handleBills);
+        server.createContext("/totals", this::handleTotals);
+    }
+
+    /**
+     * Have the JDK's HTTP server send each response as soon as it is written. Without this
+     * the headers and body go in separate packets and small answers wait ~40 ms for a
+     * delayed ACK. The setting is for the whole JVM and is read when the first server is
+     * created, so this is for a program's main method; a value given with -D is kept.
+     */
+    public static void setNoDelayDefault() {
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop taking requests, giving those in progress up to a second to finish.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port listened on, useful when created with port 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Virtual threads arrived in Java 21. Looked up by name so the same build runs on 17.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "bill-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handleBills(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/bills") || path.equals("/bills/")) {
+                if (method.equals("GET")) {
+                    listBills(exchange);
+                } else if (method.equals("POST")) {
+                    if (writeAllowed(exchange)) {
+                        addBill(exchange);
+                    }
+                } else {
+                    sendError(exchange, 405, "Use GET or POST");
+                }
+                return;
+            }
+            long id;
+            try {
+                id = Long.parseLong(path.substring("/bills/".length()));
+            } catch (NumberFormatException e) {
+                sendError(exchange, 404, "No such bill");
+                return;
+            }
+            switch (method) {
+                case "GET":
+                    getBill(exchange, id);
+                    break;
+                case "PUT":
+                    if (writeAllowed(exchange)) {
+                        editBill(exchange, id);
+                    }
+                    break;
+                case "DELETE":
+                    if (writeAllowed(exchange)) {
+                        deleteBill(exchange, id);
+                    }
+                    break;
+                default:
+                    sendError(exchange, 405, "Use GET, PUT or DELETE");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // A web page can send a form, but not with a JSON Content-Type, and a page reached
+    // through a rebound DNS name still sends that name as the Host. Either is refused.
+    private static boolean writeAllowed(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null || !contentType.split(";", 2)[0].trim().equalsIgnoreCase("application/json")) {
+            sendError(exchange, 415, "Send the body as application/json");
+            return false;
+        }
+        if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))) {
+            sendError(exchange, 403, "Changes are only taken from localhost");
+            return false;
+        }
+        return true;
+    }
+
+    // localhost, 127.x.x.x or [::1], with or without a port.
+    private static boolean isLoopbackHost(String host) {
+        if (host == null) {
+            return false;
+        }
+        host = host.trim().toLowerCase(Locale.ROOT);
+        if (host.startsWith("[")) {
+            int end = host.indexOf(']');
+            return end > 0 && host.substring(1, end).equals("::1") && isPort(host.substring(end + 1));
+        }
+        int colon = host.indexOf(':');
+        String name = colon < 0 ? host : host.substring(0, colon);
+        if (colon >= 0 && !isPort(host.substring(colon))) {
+            return false;
+        }
+        if (name.equals("localhost")) {
+            return true;
+        }
+        String[] parts = name.split("\\.", -1);
+        if (parts.length != 4 || !parts[0].equals("127")) {
+            return false;
+        }
+        for (String part : parts) {
+            if (!part.matches("\\d{1,3}") || Integer.parseInt(part) > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Empty, or a colon and a port number.
+    private static boolean isPort(String text) {
+        return text.isEmpty() || text.matches(":\\d{1,5}");
+    }
+
+    private void handleTotals(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Use GET");
+                return;
+            }
+            totals(exchange);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listBills(HttpExchange exchange) throws IOException {
+        DueRange range = new DueRange(exchange);
+        BillSnapshot snapshot = data.snapshot();
+        if (notModified(exchange, snapshot)) {
+            return;
+        }
+        exchange.sendResponseHeaders(200, 0); // Length unknown, so the body is sent in chunks
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), BUFFER_SIZE);
+        StringBuilder json = new StringBuilder(256);
+        out.write('[');
+        boolean first = true;
+        for (BillRecord bill : range.select(snapshot)) {
+            json.setLength(0);
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            out.append(BillJson.appendBill(json, bill));
+        }
+        out.write(']');
+        out.flush();
+    }
+
+    private void getBill(HttpExchange exchange, long id) throws IOException {
+        BillSnapshot snapshot = data.snapshot();
+        BillRecord bill = snapshot.getBill(id);
+        if (bill == null) {
+            sendError(exchange, 404, "No such bill");
+        } else if (!notModified(exchange, snapshot)) {
+            sendJson(exchange, 200, BillJson.appendBill(new StringBuilder(), bill));
+        }
+    }
+
+    private void totals(HttpExchange exchange) throws IOException {
+        DueRange range = new DueRange(exchange);
+        BillSnapshot snapshot = data.snapshot();
+        if (notModified(exchange, snapshot)) {
+            return;
+        }
+        Totals cached = lastTotals;
+        if (cached != null && cached.version == snapshot.getVersion() && cached.range.equals(range.toString())) {
+            sendJson(exchange, 200, cached.json);
+            return;
+        }
+        Map<String, long[]> accounts = new TreeMap<>(); // Count and pence per account
+        long count = 0;
+        long pence = 0;
+        for (BillRecord bill : range.select(snapshot)) {
+            long billPence = Math.round(bill.getAmount() * 100);
+            long[] account = accounts.computeIfAbsent(String.valueOf(bill.getBankAccount()), a -> new long[2]);
+            account[0]++;
+            account[1] += billPence;
+            count++;
+            pence += billPence;
+        }
+        StringBuilder json = new StringBuilder("{\"count\":").append(count);
+        AmountUtil.appendPence(json.append(",\"total\":"), pence).append(",\"accounts\":{");
+        boolean first = true;
+        for (Map.Entry<String, long[]> account : accounts.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            BillJson.appendString(json, account.getKey()).append(":{\"count\":").append(account.getValue()[0]);
+            AmountUtil.appendPence(json.append(",\"total\":"), account.getValue()[1]).append('}');
+        }
+        json.append("}}");
+        lastTotals = new Totals(snapshot.getVersion(), range.toString(), json.toString());
+        sendJson(exchange, 200, json);
+    }
+
+    private void addBill(HttpExchange exchange) throws IOException {
+        Bill bill = BillJson.newBill(BillJson.parseObject(readBody(exchange)));
+        BillRecord added = apply(exchange, data -> {
+            data.addBill(bill);
+            return new BillRecord(bill);
+        });
+        if (added != null) {
+            exchange.getResponseHeaders().set("Location", "/bills/" + added.getId());
+            sendJson(exchange, 201, BillJson.appendBill(new StringBuilder(), added));
+        }
+    }
+
+    private void editBill(HttpExchange exchange, long id) throws IOException {
+        Map<String, Object> fields = BillJson.parseObject(readBody(exchange));
+        BillRecord edited = apply(exchange, data -> {
+            Bill bill = data.getBill(id);
+            if (bill == null) {
+                return null;
+            }
+            BillJson.editBill(bill, fields);
+            data.updateBill(bill);
+            return new BillRecord(bill);
+        });
+        if (edited != null) {
+            sendJson(exchange, 200, BillJson.appendBill(new StringBuilder(), edited));
+        } else if (exchange.getResponseCode() < 0) {
+            sendError(exchange, 404, "No such bill");
+        }
+    }
+
+    private void deleteBill(HttpExchange exchange, long id) throws IOException {
+        Boolean deleted = apply(exchange, data -> data.deleteBill(id));
+        if (Boolean.TRUE.equals(deleted)) {
+            exchange.sendResponseHeaders(204, -1);
+        } else if (exchange.getResponseCode() < 0) {
+            sendError(exchange, 404, "No such bill");
+        }
+    }
+
+    // Make a change on the thread that owns the bills and wait for its result. On failure
+    // the error is sent and null returned.
+    private <T> T apply(HttpExchange exchange, Function<? super BillData, T> change) throws IOException {
+        try {
+            return updater.call(change).get(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                sendError(exchange, 400, e.getCause().getMessage());
+            } else {
+                sendError(exchange, 500, "Problem changing bills: " + e.getCause());
+            }
+        } catch (TimeoutException e) {
+            sendError(exchange, 503, "Bills are busy, try again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Server stopping");
+        }
+        return null;
+    }
+
+    // Answer 304 if the client already has this version, otherwise set the ETag for the answer.
+    private boolean notModified(HttpExchange exchange, BillSnapshot snapshot) throws IOException {
+        String etag = "\"" + etagPrefix + snapshot.getVersion() + "\"";
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", "no-cache");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag) || tag.equals("*")) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return true;
+                }
+            }
+        }
+        headers.set("Content-Type", JSON);
+        return false;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().remove("ETag");
+        sendJson(exchange, status, BillJson.appendString(new StringBuilder("{\"error\":"), message).append('}'));
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Totals {
+        final long version;
+        final String range;
+        final String json;
+
+        Totals(long version, String range, String json) {
+            this.version = version;
+            this.range = range;
+            this.json = json;
+        }
+    }
+
+    // The from and to query parameters, each optional and inclusive.
+    private static final class DueRange {
+        private final LocalDate from;
+        private final LocalDate to;
+
+        DueRange(HttpExchange exchange) {
+            Map<String, String> query = new HashMap<>();
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null) {
+                for (String parameter : rawQuery.split("&")) {
+                    int equals = parameter.indexOf('=');
+                    if (equals > 0) {
+                        query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                                URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            from = query.containsKey("from") ? BillJson.date("from", query.get("from")) : null;
+            to = query.containsKey("to") ? BillJson.date("to", query.get("to")) : null;
+        }
+
+        // The bills in the range, in list order.
+        List<BillRecord> select(BillSnapshot snapshot) {
+            return snapshot.dueBetween(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return from + ".." + to;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package bills;
+
+import bills.datamodel.Bill;
+import bills.datamodel.BillData;
+import bills.datamodel.BillFileWatcher;
+import bills.datamodel.BillSaver;
+import bills.datamodel.BillUpdater;
+import bills.datamodel.JdbcBillStorage;
+import bills.datamodel.XmlBillStorage;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Headless entry point for scripts and scheduled jobs. Works on a bills file through
+ * BillData without starting the JavaFX toolkit or loading any FXML.
+ *
+ * total, list and export stream the bills from the file one at a time, so files of any
+ * size are processed in constant memory. import has to load the whole file to save it,
+ * and serve keeps it loaded to answer BillServer requests until the process is stopped,
+ * taking in changes other programs make to the file.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillsCli {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java bills.BillsCli <command> <bills file> [arguments] [filters]",
+            "  total  <bills file> [filters]            number and total of the bills, per account",
+            "  list   <bills file> [filters] [--xml]    print the bills, tab separated or as XML",
+            "  export <bills file> <xml file> [filters] write the bills as XML, - for standard output",
+            "  import <bills file> <xml file>           add the bills in an XML file and save",
+            "  migrate <jdbc url> <xml file>            copy an XML bills file into an empty database",
+            "  serve  <bills file> [port]               answer HTTP requests on localhost, port 8080 by default",
+            "Filters:",
+            "  --from dd-mm-yyyy   --to dd-mm-yyyy   due between the dates, inclusive",
+            "  --account NAME      paid from the account",
+            "  --name TEXT         name contains the text, ignoring case");
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_PORT = 8080;
+
+    private final BillData data;
+    private Predicate<Bill> filter = bill -> true;
+    private boolean xml;
+
+    private BillsCli(String billsFile) {
+        data = new BillData(billsFile);
+    }
+
+    public static void main(String[] args) {
+        BillServer.setNoDelayDefault(); // For serve
+        System.exit(run(args));
+    }
+
+    /**
+     * Run one command.
+     * @param args command, bills file and arguments, as given on the command line.
+     * @return exit status, 0 for success, 1 if the command failed, 2 for bad arguments.
+     */
+    static int run(String[] args) {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        BillsCli cli = new BillsCli(args[1]);
+        String command = args[0];
+        boolean needsFile = command.equals("export") || command.equals("import") || command.equals("migrate");
+        if (needsFile && args.length < 3) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        try {
+            cli.parseOptions(args, needsFile || command.equals("serve") ? 3 : 2);
+            switch (command) {
+                case "total":
+                    cli.total();
+                    break;
+                case "list":
+                    cli.list(System.out);
+                    break;
+                case "export":
+                    cli.export(args[2]);
+                    break;
+                case "import":
+                    cli.importXml(args[2]);
+                    break;
+                case "migrate":
+                    migrate(args[1], args[2]);
+                    break;
+                case "serve":
+                    cli.serve(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT);
+                    break;
+                default:
+                    System.err.println("Unknown command: " + command);
+                    System.err.println(USAGE);
+                    return 2;
+            }
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Problem with bills file: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void parseOptions(String[] args, int first) {
+        for (int i = first; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--xml")) {
+                xml = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--from": {
+                    LocalDate from = date(value);
+                    filter = filter.and(bill -> bill.getDateOfPayment() != null && !bill.getDateOfPayment().isBefore(from));
+                    break;
+                }
+                case "--to": {
+                    LocalDate to = date(value);
+                    filter = filter.and(bill -> bill.getDateOfPayment() != null && !bill.getDateOfPayment().isAfter(to));
+                    break;
+                }
+                case "--account":
+                    filter = filter.and(bill -> value.equals(bill.getBankAccount()));
+                    break;
+                case "--name": {
+                    String text = value.toLowerCase();
+                    filter = filter.and(bill -> bill.getName() != null && bill.getName().toLowerCase().contains(text));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+    }
+
+    private static LocalDate date(String text) {
+        LocalDate date = DateUtil.parse(text);
+        if (date == null) {
+            throw new IllegalArgumentException("Not a date: " + text);
+        }
+        return date;
+    }
+
+    /**
+     * Print the number and total of the matching bills, overall and for each account.
+     */
+    private void total() throws IOException {
+        Map<String, long[]> accounts = new TreeMap<>(); // Count and pence per account
+        long[] overall = new long[2];
+        forEachMatching(bill -> {
+            long cents = Math.round(bill.getAmount() * 100);
+            long[] account = accounts.computeIfAbsent(String.valueOf(bill.getBankAccount()), a -> new long[2]);
+            account[0]++;
+            account[1] += cents;
+            overall[0]++;
+            overall[1] += cents;
+        });
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, long[]> account : accounts.entrySet()) {
+            line.setLength(0);
+            line.append(account.getKey()).append('\t').append(account.getValue()[0]).append('\t');
+            System.out.println(AmountUtil.appendPence(line, account.getValue()[1]));
+        }
+        line.setLength(0);
+        line.append("Total\t").append(overall[0]).append('\t');
+        System.out.println(AmountUtil.appendPence(line, overall[1]));
+    }
+
+    /**
+     * Write the matching bills as tab separated lines, or as XML with --xml.
+     */
+    private void list(OutputStream stream) throws IOException {
+        if (xml) {
+            writeXml(stream);
+            return;
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        out.write("Id\tName\tDue\tAmount\tAccount\tRepeats\tNotes\n");
+        StringBuilder line = new StringBuilder();
+        forEachMatching(bill -> {
+            line.setLength(0);
+            line.append(bill.getId()).append('\t');
+            appendText(line, bill.getName()).append('\t');
+            line.append(DateUtil.format(bill.getDateOfPayment())).append('\t');
+            AmountUtil.appendPence(line, Math.round(bill.getAmount() * 100)).append('\t');
+            appendText(line, bill.getBankAccount()).append('\t');
+            line.append(bill.getRecurrence().name()).append('\t');
+            appendText(line, bill.getNotes()).append('\n');
+            try {
+                out.append(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+
+    private void export(String xmlFile) throws IOException {
+        if (xmlFile.equals("-")) {
+            writeXml(System.out);
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(Paths.get(xmlFile))) {
+            writeXml(out);
+        }
+    }
+
+    private void writeXml(OutputStream stream) throws IOException {
+        OutputStream out = new BufferedOutputStream(stream, BUFFER_SIZE);
+        try (XmlBillStorage.Writer writer = new XmlBillStorage.Writer(out, 0)) {
+            forEachMatching(bill -> {
+                try {
+                    writer.write(bill);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        out.flush();
+    }
+
+    private void importXml(String xmlFile) throws IOException {
+        data.loadBills();
+        int before = data.getBills().size();
+        data.importXml(Paths.get(xmlFile));
+        data.saveBills();
+        System.out.println("Imported " + (data.getBills().size() - before) + " bills, "
+                + data.getBills().size() + " in total");
+    }
+
+    private static void migrate(String url, String xmlFile) throws IOException {
+        if (!url.startsWith(JdbcBillStorage.URL_PREFIX)) {
+            throw new IllegalArgumentException("Not a JDBC URL: " + url);
+        }
+        try (JdbcBillStorage database = new JdbcBillStorage(url)) {
+            int count = database.migrateFrom(Paths.get(xmlFile));
+            System.out.println("Copied " + count + " bills to " + url);
+        }
+    }
+
+    /**
+     * Load the bills and serve them until the process is stopped. The bills are changed
+     * only on one thread, standing in for the FX thread, and each batch of changes is
+     * journaled and saved.
+     */
+    private void serve(int port) throws IOException {
+        ExecutorService owner = Executors.newSingleThreadExecutor(task -> new Thread(task, "bills"));
+        BillServer server;
+        try {
+            server = owner.submit(() -> {
+                data.setJournaled(true);
+                data.loadBills();
+                BillSaver saver = new BillSaver(data);
+                Runtime.getRuntime().addShutdownHook(new Thread(saver::close));
+                BillUpdater updater = new BillUpdater(data, owner, saver::requestSave);
+                if (data.getStorage() instanceof XmlBillStorage) {
+                    new BillFileWatcher(data, owner, saver::requestSave); // Runs until the process ends
+                }
+                return new BillServer(data, updater, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            owner.shutdown();
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause == null ? e : cause);
+        }
+        server.start();
+        System.out.println("Serving " + data.getBills().size() + " bills on http://localhost:" + server.getPort() + "/bills");
+        try {
+            new CountDownLatch(1).await(); // Until the process is stopped
+        } catch (InterruptedException e) {
+            server.stop();
+            owner.shutdown();
+        }
+    }
+
+    private void forEachMatching(Consumer<Bill> action) throws IOException {
+        try {
+            data.forEachSavedBill(bill -> {
+                if (filter.test(bill)) {
+                    action.accept(bill);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Tabs and line breaks would split the record, so they are printed as spaces.
+    private static StringBuilder appendText(StringBuilder line, String text) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+            }
+        }
+        return line;
+    }
+}
@@ -8,24 +8,27 @@ import javafx.util.Callback;
 import java.text.Format;
 
 public class ColumnFormatter<S, T> implements Callback<TableColumn<S, T>, TableCell<S, T>> {
-    private Format format;
+    private final FormattedValueCache<T> cache; // Shared by every cell in the column
 
     public ColumnFormatter(Format format) {
         super();
-        this.format = format;
+        this.cache = new FormattedValueCache<>(format::format);
     }
     @Override
     public TableCell<S, T> call(TableColumn<S, T> arg0) {
         return new TableCell<S, T>() {
+            private final Label label = new Label(); // Reused for whatever item the cell shows
+
             @Override
             public void updateItem(T item, boolean empty) {
                 super.updateItem(item, empty);
                 if (item == null || empty) {
                     setGraphic(null);
                 } else {
-                    setGraphic(new Label(format.format(item)));
+                    label.setText(cache.format(item));
+                    setGraphic(label);
                 }
             }
         };
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,20 @@
 package bills;
 
 import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 /**
  * Helper class for handling dates conversion.
  *
+ * Dates are shown as dd-MM-yyyy and kept in the bills file as dd/MM/yyyy. Both fixed
+ * patterns are read and written by hand rather than through DateTimeFormatter, and
+ * recently used dates are cached, as bill dates cluster around the same few years.
+ * Anything the fast path does not handle, such as years beyond 9999, is passed to
+ * DateTimeFormatter so the results are the same as before.
+ *
  * @author Marco Jakob
  */
 public class DateUtil {
@@ -14,10 +22,46 @@ public class DateUtil {
     /** The date pattern that is used for conversion. Change as you wish. */
     private static final String DATE_PATTERN = "dd-MM-yyyy";
 
+    /** The date pattern used in the bills file. */
+    private static final String FILE_DATE_PATTERN = "dd/MM/yyyy";
+
     /** The date formatter. */
     private static final DateTimeFormatter DATE_FORMATTER =
             DateTimeFormatter.ofPattern(DATE_PATTERN);
 
+    private static final DateTimeFormatter FILE_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern(FILE_DATE_PATTERN);
+
+    /** Cache slots, a power of two - about eleven years of consecutive days. */
+    private static final int CACHE_SIZE = 4096;
+    private static final int CACHE_MASK = CACHE_SIZE - 1;
+
+    // Each slot holds an immutable entry, so the caches can be shared between threads
+    // without locking: a reader sees either a whole entry or none.
+    private static final DateText[] TEXT_CACHE = new DateText[CACHE_SIZE];
+    private static final DateText[] FILE_TEXT_CACHE = new DateText[CACHE_SIZE];
+    private static final ParsedDate[] PARSED_CACHE = new ParsedDate[CACHE_SIZE];
+
+    private static final class DateText {
+        final long epochDay;
+        final String text;
+
+        DateText(long epochDay, String text) {
+            this.epochDay = epochDay;
+            this.text = text;
+        }
+    }
+
+    private static final class ParsedDate {
+        final int key; // Day, month and year packed by dateKey()
+        final LocalDate date;
+
+        ParsedDate(int key, LocalDate date) {
+            this.key = key;
+            this.date = date;
+        }
+    }
+
     /**
      * Returns the given date as a well formatted String. The above defined
      * {@link DateUtil#DATE_PATTERN} is used.
@@ -29,7 +73,7 @@ public class DateUtil {
         if (date == null) {
             return null;
         }
-        return DATE_FORMATTER.format(date);
+        return format(date, '-', TEXT_CACHE, DATE_FORMATTER);
     }
 
     /**
@@ -43,12 +87,40 @@ public class DateUtil {
      */
     public static LocalDate parse(String dateString) {
         try {
-            return DATE_FORMATTER.parse(dateString, LocalDate::from);
+            return parse(dateString, '-', DATE_FORMATTER);
         } catch (DateTimeParseException e) {
             return null;
         }
     }
 
+    /**
+     * Returns the given date as it is written in the bills file, using
+     * {@link DateUtil#FILE_DATE_PATTERN}.
+     *
+     * @param date the date to be written, may be null.
+     * @return formatted string, or null for a null date.
+     */
+    public static String formatFileDate(LocalDate date) {
+        if (date == null) {
+            return null;
+        }
+        return format(date, '/', FILE_TEXT_CACHE, FILE_DATE_FORMATTER);
+    }
+
+    /**
+     * Reads a date written in the bills file with {@link DateUtil#FILE_DATE_PATTERN}.
+     *
+     * @param text the date as written in the file, empty for no date.
+     * @return the date object, or null if the text is null or empty.
+     * @throws DateTimeParseException if the text is not a date.
+     */
+    public static LocalDate parseFileDate(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return null;
+        }
+        return parse(text, '/', FILE_DATE_FORMATTER);
+    }
+
     /**
      * Checks the String whether it is a valid date.
      *
@@ -59,4 +131,73 @@ public class DateUtil {
         // Try to parse the String.
         return DateUtil.parse(dateString) != null;
     }
+
+    private static String format(LocalDate date, char separator, DateText[] cache, DateTimeFormatter formatter) {
+        long epochDay = date.toEpochDay();
+        int slot = (int) epochDay & CACHE_MASK;
+        DateText cached = cache[slot];
+        if (cached != null && cached.epochDay == epochDay) {
+            return cached.text;
+        }
+
+        String text;
+        int year = date.getYear();
+        if (year >= 1 && year <= 9999) {
+            char[] chars = new char[10];
+            putTwoDigits(chars, 0, date.getDayOfMonth());
+            chars[2] = separator;
+            putTwoDigits(chars, 3, date.getMonthValue());
+            chars[5] = separator;
+            putTwoDigits(chars, 6, year / 100);
+            putTwoDigits(chars, 8, year % 100);
+            text = new String(chars);
+        } else {
+            text = formatter.format(date);
+        }
+        cache[slot] = new DateText(epochDay, text);
+        return text;
+    }
+
+    private static void putTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static LocalDate parse(CharSequence text, char separator, DateTimeFormatter formatter) {
+        if (text != null && text.length() == 10 && text.charAt(2) == separator && text.charAt(5) == separator) {
+            int day = twoDigits(text, 0);
+            int month = twoDigits(text, 3);
+            int century = twoDigits(text, 6);
+            int yearOfCentury = twoDigits(text, 8);
+            int year = century * 100 + yearOfCentury;
+            if (day >= 1 && day <= 31 && month >= 1 && month <= 12 && century >= 0 && yearOfCentury >= 0 && year > 0) {
+                int key = dateKey(day, month, year);
+                int slot = key & CACHE_MASK;
+                ParsedDate cached = PARSED_CACHE[slot];
+                if (cached != null && cached.key == key) {
+                    return cached.date;
+                }
+                // As DateTimeFormatter does by default, a day past the end of the month means the last day.
+                int lastDay = Month.of(month).length(Year.isLeap(year));
+                LocalDate date = LocalDate.of(year, month, Math.min(day, lastDay));
+                PARSED_CACHE[slot] = new ParsedDate(key, date);
+                return date;
+            }
+        }
+        return formatter.parse(text, LocalDate::from);
+    }
+
+    // Consecutive days get consecutive keys within a month, so they fall in different cache slots.
+    private static int dateKey(int day, int month, int year) {
+        return (year * 12 + month - 1) * 31 + day - 1;
+    }
+
+    private static int twoDigits(CharSequence text, int offset) {
+        char tens = text.charAt(offset);
+        char units = text.charAt(offset + 1);
+        if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + units - '0';
+    }
 }
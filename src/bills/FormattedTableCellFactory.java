@@ -6,12 +6,26 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.text.TextAlignment;
 import javafx.util.Callback;
 import java.text.Format;
+import java.util.function.Function;
 import javafx.scene.Node;
 
 public class FormattedTableCellFactory<S, T>
         implements Callback<TableColumn<S, T>, TableCell<S, T>> {
-    private TextAlignment alignment;
+    private TextAlignment alignment = TextAlignment.LEFT;
     private Format format;
+    private FormattedValueCache<T> cache; // Formatted items, shared by every cell in the column
+
+    public FormattedTableCellFactory() {
+    }
+
+    /**
+     * @param alignment alignment of the cells' text.
+     * @param formatter makes the text shown for an item, called once per distinct item while it stays cached.
+     */
+    public FormattedTableCellFactory(TextAlignment alignment, Function<? super T, String> formatter) {
+        this.alignment = alignment;
+        this.cache = new FormattedValueCache<>(formatter);
+    }
 
     public TextAlignment getAlignment() {
         return alignment;
@@ -27,30 +41,26 @@ public class FormattedTableCellFactory<S, T>
 
     public void setFormat(Format format) {
         this.format = format;
+        this.cache = format == null ? null : new FormattedValueCache<>(format::format);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public TableCell<S, T> call(TableColumn<S, T> p) {
         TableCell<S, T> cell = new TableCell<S, T>() {
             @Override
-            public void updateItem(Object item, boolean empty) {
-                if (item == getItem()) {
-
-                    return;
-                }
-                super.updateItem((T) item, empty);
-                if (item == null) {
-                    super.setText(null);
-                    super.setGraphic(null);
-                } else if (format != null) {
-                    super.setText(format.format(item));
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                if (item == null || empty) {
+                    setText(null);
+                    setGraphic(null);
+                } else if (cache != null) {
+                    setText(cache.format(item));
                 } else if (item instanceof Node) {
-                    super.setText(null);
-                    super.setGraphic((Node) item);
+                    setText(null);
+                    setGraphic((Node) item);
                 } else {
-                    super.setText(item.toString());
-                    super.setGraphic(null);
+                    setText(item.toString());
+                    setGraphic(null);
                 }
             }
         };
@@ -69,4 +79,3 @@ public class FormattedTableCellFactory<S, T>
         return cell;
     }
 }
-
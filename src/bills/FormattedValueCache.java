@@ -0,0 +1,61 @@
+package bills;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of formatted values for table cells. Scrolling shows the same amounts
+ * and dates over and over, so each value is formatted once and the string reused.
+ * Once full, the least recently shown value is dropped. Not thread safe - cells are
+ * only updated on the JavaFX application thread.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public final class FormattedValueCache<T> {
+
+    /** Number of formatted values kept unless another size is given. */
+    public static final int DEFAULT_SIZE = 4096;
+
+    private final Function<? super T, String> formatter;
+    private final Map<T, String> cache;
+
+    public FormattedValueCache(Function<? super T, String> formatter) {
+        this(formatter, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param formatter makes the string for a value not in the cache.
+     * @param maxSize most values kept.
+     */
+    public FormattedValueCache(Function<? super T, String> formatter, int maxSize) {
+        this.formatter = formatter;
+        this.cache = new LinkedHashMap<T, String>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<T, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param value value to format, may be null.
+     * @return the formatted value, the same string each time while it stays cached, null for null.
+     */
+    public String format(T value) {
+        if (value == null) {
+            return null;
+        }
+        String text = cache.get(value);
+        if (text == null) {
+            text = formatter.apply(value);
+            cache.put(value, text);
+        }
+        return text;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
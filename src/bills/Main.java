@@ -8,15 +8,28 @@ import javafx.stage.Stage;
 
 public class Main extends Application {
 
+    private mainController controller;
+
     @Override
     public void start(Stage primaryStage) throws Exception{
-        Parent root = FXMLLoader.load(getClass().getResource("MainWindow.fxml"));
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("MainWindow.fxml"));
+        Parent root = loader.load();
+        controller = loader.getController();
         primaryStage.setTitle("My Bills");
         primaryStage.setScene(new Scene(root, 600, 400));
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        // Make sure background saves reach the file before the JVM exits.
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
+        BillServer.setNoDelayDefault(); // In case the window is asked to serve the bills
         launch(args);
     }
 }
@@ -1,25 +1,47 @@
 package bills.datamodel;
 
 import javafx.beans.property.*;
+import javafx.beans.value.ChangeListener;
 import java.time.LocalDate;
 
 /**
  * class Bill holds the details of a household bill.
  *
+ * The details are kept in plain fields and each JavaFX property is only created the
+ * first time it is asked for, from then on holding the value, so bills that are loaded
+ * and added up but never shown or bound do without them.
+ *
  * @author Wayne Sandford
  * @version 03-07-19 02
  */
 public class Bill {
 
-    // Instance variables - SimpleStringProperty types used for binding requirements in JavaFX
-    private SimpleStringProperty name = new SimpleStringProperty("");
-    private ObjectProperty<LocalDate> dateOfPayment = new SimpleObjectProperty<>();
-    private SimpleDoubleProperty amount = new SimpleDoubleProperty(0.0);
-    private SimpleStringProperty bankAccount = new SimpleStringProperty();
-    private SimpleStringProperty notes = new SimpleStringProperty("");
-    private final ObjectProperty<LocalDate> dateStarted = new SimpleObjectProperty<>();
-    private ObjectProperty<LocalDate> dateChanged = new SimpleObjectProperty<>();
-    private SimpleDoubleProperty previousAmount = new SimpleDoubleProperty();
+    // Instance variables - plain values until the matching property is first asked for
+    private String name = "";
+    private LocalDate dateOfPayment;
+    private double amount;
+    private String bankAccount;
+    private String notes = "";
+    private LocalDate dateStarted;
+    private LocalDate dateChanged;
+    private double previousAmount;
+    private Recurrence recurrence = Recurrence.NONE;
+    private long id; // Stable identifier given by BillData, 0 until the bill is first added to one
+
+    // Properties for binding requirements in JavaFX, null until first asked for.
+    // Each property knows its bill (getBean()) so one listener can serve every bill.
+    private SimpleStringProperty nameProperty;
+    private ObjectProperty<LocalDate> dateOfPaymentProperty;
+    private SimpleDoubleProperty amountProperty;
+    private SimpleStringProperty bankAccountProperty;
+    private SimpleStringProperty notesProperty;
+    private ObjectProperty<LocalDate> dateStartedProperty;
+    private ObjectProperty<LocalDate> dateChangedProperty;
+    private SimpleDoubleProperty previousAmountProperty;
+    private ObjectProperty<Recurrence> recurrenceProperty;
+
+    // Told of amount changes without making the amount property, for BillData's running total
+    private ChangeListener<Number> amountListener;
 
     // Constructors.
     public Bill() {
@@ -27,124 +49,245 @@ public class Bill {
 
     public Bill(String name, LocalDate dateOfPayment, double amount, String account, String notes,
                 LocalDate dStarted, LocalDate dChanged, double pAmount) {
-        this.name.set(name);
-        this.dateOfPayment.set(dateOfPayment);
-        this.amount.set(amount);
-        this.bankAccount.set(account);
-        this.notes.set(notes);
-        this.dateStarted.set(dStarted);
-        this.dateChanged.set(dChanged);
-        this.previousAmount.set(pAmount);
+        this.name = name;
+        this.dateOfPayment = dateOfPayment;
+        this.amount = amount;
+        this.bankAccount = account;
+        this.notes = notes;
+        this.dateStarted = dStarted;
+        this.dateChanged = dChanged;
+        this.previousAmount = pAmount;
+    }
+
+    /**
+     * @return the bill's identifier, unique within its BillData and never reused, or 0 if it has none yet.
+     */
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
     }
 
     public String getName() {
-        return name.get();
+        return nameProperty == null ? name : nameProperty.get();
     }
 
     public SimpleStringProperty nameProperty() {
-        return name;
+        if (nameProperty == null) {
+            nameProperty = new SimpleStringProperty(this, "name", name);
+        }
+        return nameProperty;
     }
 
     public void setName(String name) {
-        this.name.set(name);
+        if (nameProperty == null) {
+            this.name = name;
+        } else {
+            nameProperty.set(name);
+        }
     }
 
     public double getAmount() {
-        return amount.get();
+        return amountProperty == null ? amount : amountProperty.get();
     }
 
     public SimpleDoubleProperty amountProperty() {
-        return amount;
+        if (amountProperty == null) {
+            amountProperty = new SimpleDoubleProperty(this, "amount", amount);
+            if (amountListener != null) {
+                amountProperty.addListener(amountListener);
+            }
+        }
+        return amountProperty;
     }
 
     public void setAmount(double amount) {
-        this.amount.set(amount);
+        if (amountProperty != null) {
+            amountProperty.set(amount);
+            return;
+        }
+        double oldAmount = this.amount;
+        this.amount = amount;
+        if (amountListener != null && oldAmount != amount) {
+            amountListener.changed(null, oldAmount, amount);
+        }
+    }
+
+    /**
+     * Have a listener told of every change to the amount, through the amount property once
+     * it exists and directly from setAmount() until then, when the observable it is given
+     * is null. The first such listener is kept without making the property; any more are
+     * added to the property.
+     * @param listener the listener.
+     */
+    void addAmountListener(ChangeListener<Number> listener) {
+        if (amountListener != null) {
+            amountProperty().addListener(listener);
+            return;
+        }
+        amountListener = listener;
+        if (amountProperty != null) {
+            amountProperty.addListener(listener);
+        }
+    }
+
+    void removeAmountListener(ChangeListener<Number> listener) {
+        if (amountListener == listener) {
+            amountListener = null;
+        }
+        if (amountProperty != null) {
+            amountProperty.removeListener(listener);
+        }
     }
 
     public LocalDate getDateOfPayment() {
-        return dateOfPayment.get();
+        return dateOfPaymentProperty == null ? dateOfPayment : dateOfPaymentProperty.get();
     }
 
     public ObjectProperty<LocalDate> dateOfPaymentProperty() {
-        return dateOfPayment;
+        if (dateOfPaymentProperty == null) {
+            dateOfPaymentProperty = new SimpleObjectProperty<>(this, "dateOfPayment", dateOfPayment);
+        }
+        return dateOfPaymentProperty;
     }
 
     public void setDateOfPayment(LocalDate dateOfPayment) {
-        this.dateOfPayment.set(dateOfPayment);
+        if (dateOfPaymentProperty == null) {
+            this.dateOfPayment = dateOfPayment;
+        } else {
+            dateOfPaymentProperty.set(dateOfPayment);
+        }
     }
 
     public String getNotes() {
-        return notes.get();
+        return notesProperty == null ? notes : notesProperty.get();
     }
 
     public SimpleStringProperty notesProperty() {
-        return notes;
+        if (notesProperty == null) {
+            notesProperty = new SimpleStringProperty(this, "notes", notes);
+        }
+        return notesProperty;
     }
 
     public void setNotes(String notes) {
-        this.notes.set(notes);
+        if (notesProperty == null) {
+            this.notes = notes;
+        } else {
+            notesProperty.set(notes);
+        }
     }
 
     public String getBankAccount() {
-        return bankAccount.get();
+        return bankAccountProperty == null ? bankAccount : bankAccountProperty.get();
     }
 
     public SimpleStringProperty bankAccountProperty() {
-        return bankAccount;
+        if (bankAccountProperty == null) {
+            bankAccountProperty = new SimpleStringProperty(this, "bankAccount", bankAccount);
+        }
+        return bankAccountProperty;
     }
 
     public void setBankAccount(String bankAccount) {
-        this.bankAccount.set(bankAccount);
+        if (bankAccountProperty == null) {
+            this.bankAccount = bankAccount;
+        } else {
+            bankAccountProperty.set(bankAccount);
+        }
     }
 
     public LocalDate getDateStarted() {
-        return dateStarted.get();
+        return dateStartedProperty == null ? dateStarted : dateStartedProperty.get();
     }
 
     public ObjectProperty<LocalDate> dateStartedProperty() {
-        return dateStarted;
+        if (dateStartedProperty == null) {
+            dateStartedProperty = new SimpleObjectProperty<>(this, "dateStarted", dateStarted);
+        }
+        return dateStartedProperty;
     }
 
     public void setDateStarted(LocalDate dateStarted) {
-        this.dateStarted.set(dateStarted);
+        if (dateStartedProperty == null) {
+            this.dateStarted = dateStarted;
+        } else {
+            dateStartedProperty.set(dateStarted);
+        }
     }
 
     public LocalDate getDateChanged() {
-        return dateChanged.get();
+        return dateChangedProperty == null ? dateChanged : dateChangedProperty.get();
     }
 
     public ObjectProperty<LocalDate> dateChangedProperty() {
-        return dateChanged;
+        if (dateChangedProperty == null) {
+            dateChangedProperty = new SimpleObjectProperty<>(this, "dateChanged", dateChanged);
+        }
+        return dateChangedProperty;
     }
 
     public void setDateChanged(LocalDate dateChanged) {
-        this.dateChanged.set(dateChanged);
+        if (dateChangedProperty == null) {
+            this.dateChanged = dateChanged;
+        } else {
+            dateChangedProperty.set(dateChanged);
+        }
     }
 
     public double getPreviousAmount() {
-        return previousAmount.get();
+        return previousAmountProperty == null ? previousAmount : previousAmountProperty.get();
     }
 
     public SimpleDoubleProperty previousAmountProperty() {
-        return previousAmount;
+        if (previousAmountProperty == null) {
+            previousAmountProperty = new SimpleDoubleProperty(this, "previousAmount", previousAmount);
+        }
+        return previousAmountProperty;
     }
 
     public void setPreviousAmount(double previousAmount) {
-        this.previousAmount.set(previousAmount);
+        if (previousAmountProperty == null) {
+            this.previousAmount = previousAmount;
+        } else {
+            previousAmountProperty.set(previousAmount);
+        }
+    }
+
+    public Recurrence getRecurrence() {
+        return recurrenceProperty == null ? recurrence : recurrenceProperty.get();
+    }
+
+    public ObjectProperty<Recurrence> recurrenceProperty() {
+        if (recurrenceProperty == null) {
+            recurrenceProperty = new SimpleObjectProperty<>(this, "recurrence", recurrence);
+        }
+        return recurrenceProperty;
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        if (recurrenceProperty == null) {
+            this.recurrence = recurrence == null ? Recurrence.NONE : recurrence;
+        } else {
+            recurrenceProperty.set(recurrence == null ? Recurrence.NONE : recurrence);
+        }
     }
 
     @Override
     public String toString() {
         return "Bill{" +
-                "name=" + name +
-                ", dateOfPayment=" + dateOfPayment +
-                ", amount=" + amount +
-                ", bankAccount=" + bankAccount +
-                ", notes=" + notes +
-                ", dateStarted=" + dateStarted +
-                ", dateChanged=" + dateChanged +
-                ", previousAmount=" + previousAmount +
+                "id=" + id +
+                ", name=" + getName() +
+                ", dateOfPayment=" + getDateOfPayment() +
+                ", amount=" + getAmount() +
+                ", bankAccount=" + getBankAccount() +
+                ", notes=" + getNotes() +
+                ", dateStarted=" + getDateStarted() +
+                ", dateChanged=" + getDateChanged() +
+                ", previousAmount=" + getPreviousAmount() +
+                ", recurrence=" + getRecurrence().name() +
                 '}';
     }
 }
-
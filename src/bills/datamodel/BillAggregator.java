@@ -0,0 +1,284 @@
+package bills.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * class BillAggregator works out count, total, smallest and largest amount per
+ * bank account or bill name for each month or year of due dates.
+ *
+ * It works on a copy of BillColumns' arrays, so it can run on any thread. The rows
+ * are split into ranges summed on a fork/join pool, each into a small hash table of the
+ * group and period cells it has bills for, and the tables are then merged. Only cells
+ * with bills take space, however many names there are or however far apart the dates.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillAggregator {
+
+    public enum GroupBy { ACCOUNT, NAME }
+
+    public enum Period { MONTH, YEAR }
+
+    private static final int SPLIT_ROWS = 1 << 16; // Rows summed by one task without splitting further
+    private static final int MAX_LOOKUP_DAYS = 1 << 16; // Widest span of due dates given a day to period look-up
+
+    private final long[] amountCents;
+    private final int[] dueDays;
+    private final int[] groupCodes;
+    private final String[] groupNames;
+
+    /**
+     * Copy the columns needed for grouping. Must be called on the thread that changes the bills.
+     * @param columns the bill columns.
+     * @param groupBy what to group the bills by.
+     */
+    public BillAggregator(BillColumns columns, GroupBy groupBy) {
+        amountCents = columns.amountCents();
+        dueDays = columns.dueDays();
+        if (groupBy == GroupBy.ACCOUNT) {
+            groupCodes = columns.accountCodes();
+            groupNames = columns.accountNames();
+        } else {
+            groupCodes = columns.nameCodes();
+            groupNames = columns.billNames();
+        }
+    }
+
+    /**
+     * Aggregate on the common fork/join pool.
+     */
+    public List<SpendingSummary> aggregate(Period period) {
+        return aggregate(period, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param period months or years.
+     * @param pool pool to run the aggregation on.
+     * @return one summary per group and period with any bills, by group then period.
+     */
+    public List<SpendingSummary> aggregate(Period period, ForkJoinPool pool) {
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        for (int day : dueDays) {
+            if (day != BillColumns.NO_DATE) {
+                firstDay = Math.min(firstDay, day);
+                lastDay = Math.max(lastDay, day);
+            }
+        }
+        // Look-up from day to period number, so the inner loop does no date arithmetic,
+        // unless an outlying date makes the span of days too wide for one.
+        int[] periodOfDay = null;
+        if (firstDay <= lastDay && (long) lastDay - firstDay < MAX_LOOKUP_DAYS) {
+            periodOfDay = new int[lastDay - firstDay + 1];
+            for (int i = 0; i < periodOfDay.length; i++) {
+                periodOfDay[i] = periodNumber(firstDay + i, period);
+            }
+        }
+
+        Cells cells = pool.invoke(new SumTask(0, dueDays.length, period, firstDay, periodOfDay));
+
+        // Keys sort by group, then period.
+        long[] keys = new long[cells.size];
+        int n = 0;
+        for (int slot = 0; slot < cells.keys.length; slot++) {
+            if (cells.keys[slot] != Cells.EMPTY) {
+                keys[n++] = cells.keys[slot];
+            }
+        }
+        Arrays.sort(keys);
+        List<SpendingSummary> summaries = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            int slot = cells.find(key);
+            int group = (int) (key >>> 32);
+            int number = (int) key + Integer.MIN_VALUE; // Period number, see periodNumber()
+            String label = period == Period.MONTH
+                    ? String.format("%d-%02d", Math.floorDiv(number, 12), Math.floorMod(number, 12) + 1)
+                    : Integer.toString(number);
+            summaries.add(new SpendingSummary(groupNames[group], label, cells.count[slot],
+                    cells.sum[slot], cells.min[slot], cells.max[slot]));
+        }
+        return summaries;
+    }
+
+    /**
+     * @return year * 12 + month - 1 for a month, the year for a year, without making a LocalDate.
+     */
+    private static int periodNumber(int epochDay, Period period) {
+        // Civil date from days, counting in 400 year eras from 1 March 0000.
+        long days = epochDay + 719_468L;
+        long era = Math.floorDiv(days, 146_097L);
+        long dayOfEra = days - era * 146_097L;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100); // From 1 March
+        long marchMonth = (5 * dayOfYear + 2) / 153;
+        long month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (period == Period.MONTH ? year * 12 + month - 1 : year);
+    }
+
+    // Partial results for a range of rows: open addressing on (group << 32 | period), only
+    // holding the cells that have bills.
+    private static final class Cells {
+        static final long EMPTY = -1; // Keys are never negative
+
+        long[] keys;
+        int[] count;
+        long[] sum;
+        long[] min;
+        long[] max;
+        int mask;
+        int size;
+
+        Cells() {
+            allocate(16);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            count = new int[capacity];
+            sum = new long[capacity];
+            min = new long[capacity];
+            max = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        static long key(int group, int periodNumber) {
+            return ((long) group << 32) | ((long) periodNumber - Integer.MIN_VALUE);
+        }
+
+        // Slot holding the key, or -1.
+        int find(long key) {
+            for (int slot = mix(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        // Slot holding the key, adding an empty cell for it if there is none.
+        int slot(long key) {
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size * 2 >= keys.length) {
+                grow();
+                return slot(key);
+            }
+            keys[slot] = key;
+            min[slot] = Long.MAX_VALUE;
+            max[slot] = Long.MIN_VALUE;
+            size++;
+            return slot;
+        }
+
+        void add(long key, long amount) {
+            int slot = slot(key);
+            count[slot]++;
+            sum[slot] += amount;
+            if (amount < min[slot]) {
+                min[slot] = amount;
+            }
+            if (amount > max[slot]) {
+                max[slot] = amount;
+            }
+        }
+
+        Cells merge(Cells other) {
+            if (other.size > size) {
+                return other.merge(this);
+            }
+            for (int from = 0; from < other.keys.length; from++) {
+                if (other.keys[from] != EMPTY) {
+                    int slot = slot(other.keys[from]);
+                    count[slot] += other.count[from];
+                    sum[slot] += other.sum[from];
+                    min[slot] = Math.min(min[slot], other.min[from]);
+                    max[slot] = Math.max(max[slot], other.max[from]);
+                }
+            }
+            return this;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCount = count;
+            long[] oldSum = sum;
+            long[] oldMin = min;
+            long[] oldMax = max;
+            allocate(oldKeys.length * 2);
+            size = 0;
+            for (int from = 0; from < oldKeys.length; from++) {
+                if (oldKeys[from] != EMPTY) {
+                    int slot = slot(oldKeys[from]);
+                    count[slot] = oldCount[from];
+                    sum[slot] = oldSum[from];
+                    min[slot] = oldMin[from];
+                    max[slot] = oldMax[from];
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private final class SumTask extends RecursiveTask<Cells> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Period period;
+        private final int firstDay;
+        private final int[] periodOfDay; // Period number of each day from firstDay, or null
+
+        SumTask(int from, int to, Period period, int firstDay, int[] periodOfDay) {
+            this.from = from;
+            this.to = to;
+            this.period = period;
+            this.firstDay = firstDay;
+            this.periodOfDay = periodOfDay;
+        }
+
+        @Override
+        protected Cells compute() {
+            if (to - from > SPLIT_ROWS) {
+                int middle = (from + to) >>> 1;
+                SumTask left = new SumTask(from, middle, period, firstDay, periodOfDay);
+                left.fork();
+                Cells right = new SumTask(middle, to, period, firstDay, periodOfDay).compute();
+                return left.join().merge(right);
+            }
+
+            Cells cells = new Cells();
+            int lastDay = BillColumns.NO_DATE;
+            int lastPeriod = 0;
+            for (int row = from; row < to; row++) {
+                int day = dueDays[row];
+                if (day == BillColumns.NO_DATE) {
+                    continue;
+                }
+                if (periodOfDay != null) {
+                    lastPeriod = periodOfDay[day - firstDay];
+                } else if (day != lastDay) { // Rows often share a due date with the row before
+                    lastDay = day;
+                    lastPeriod = periodNumber(day, period);
+                }
+                cells.add(Cells.key(groupCodes[row], lastPeriod), amountCents[row]);
+            }
+            return cells;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package bills.datamodel;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class BillColumns keeps a column-per-field copy of the bills list for analysis.
+ *
+ * Amounts are held as long pence, due dates as int epoch days and bank accounts and
+ * names as dictionary codes, each in its own primitive array in list order. Totals,
+ * date filters and group-bys then scan dense arrays instead of visiting every Bill
+ * and its property objects. The columns follow the observable list and each bill's
+ * properties, so they are always up to date.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillColumns {
+
+    /** Epoch day stored for a bill with no due date. */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ObservableList<Bill> bills;
+    private final StringDictionary accounts = new StringDictionary();
+    private final StringDictionary names = new StringDictionary();
+
+    // Columns, row i describes bills.get(i)
+    private Bill[] rows;
+    private long[] amountCents;
+    private int[] dueDays;
+    private int[] accountCodes;
+    private int[] nameCodes;
+    private int size;
+    private final Map<Bill, Integer> rowOf = new IdentityHashMap<>(); // Row of each bill, so an edit finds it at once
+
+    // One listener shared by every bill - the property's bean is the bill that changed.
+    private final InvalidationListener billListener =
+            observable -> billChanged((Bill) ((ReadOnlyProperty<?>) observable).getBean());
+    private final ListChangeListener<Bill> listListener = this::listChanged;
+
+    BillColumns(ObservableList<Bill> bills) {
+        this.bills = bills;
+        int capacity = Math.max(INITIAL_CAPACITY, bills.size());
+        rows = new Bill[capacity];
+        amountCents = new long[capacity];
+        dueDays = new int[capacity];
+        accountCodes = new int[capacity];
+        nameCodes = new int[capacity];
+        insert(0, bills);
+        bills.addListener(listListener);
+    }
+
+    /**
+     * Stop following the bills list.
+     */
+    void detach() {
+        bills.removeListener(listListener);
+        for (int i = 0; i < size; i++) {
+            unlisten(rows[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return sum of all amounts in pence.
+     */
+    public long totalCents() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += amountCents[i];
+        }
+        return total;
+    }
+
+    /**
+     * @param from first due date, inclusive.
+     * @param to last due date, inclusive.
+     * @return sum in pence of the bills due between the two dates.
+     */
+    public long totalCentsDueBetween(LocalDate from, LocalDate to) {
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            int day = dueDays[i];
+            if (day >= first && day <= last) {
+                total += amountCents[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param account bank account name.
+     * @return sum in pence of the bills paid from the account.
+     */
+    public long totalCentsForAccount(String account) {
+        int code = accounts.codeOf(account);
+        if (code < 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (accountCodes[i] == code) {
+                total += amountCents[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return sum in pence per bank account, accounts in order of their codes.
+     */
+    public Map<String, Long> totalCentsByAccount() {
+        return group(accounts, accountCodes);
+    }
+
+    /**
+     * @return sum in pence per bill name, names in order of their codes.
+     */
+    public Map<String, Long> totalCentsByName() {
+        return group(names, nameCodes);
+    }
+
+    private Map<String, Long> group(StringDictionary dictionary, int[] codes) {
+        long[] sums = new long[dictionary.size()];
+        boolean[] present = new boolean[dictionary.size()];
+        for (int i = 0; i < size; i++) {
+            sums[codes[i]] += amountCents[i];
+            present[codes[i]] = true;
+        }
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            if (present[code]) {
+                totals.put(dictionary.decode(code), sums[code]);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Copy of the column arrays, for callers that scan them directly, e.g. in parallel.
+     * @return amount in pence for each row.
+     */
+    public long[] amountCents() {
+        return Arrays.copyOf(amountCents, size);
+    }
+
+    /**
+     * @return due date as epoch day for each row, NO_DATE where there is none.
+     */
+    public int[] dueDays() {
+        return Arrays.copyOf(dueDays, size);
+    }
+
+    /**
+     * @return bank account dictionary code for each row, see accountNames().
+     */
+    public int[] accountCodes() {
+        return Arrays.copyOf(accountCodes, size);
+    }
+
+    /**
+     * @return bill name dictionary code for each row, see billNames().
+     */
+    public int[] nameCodes() {
+        return Arrays.copyOf(nameCodes, size);
+    }
+
+    /**
+     * @return bank account for each code, indexed by code, null at codes no longer used.
+     */
+    public String[] accountNames() {
+        return accounts.values();
+    }
+
+    /**
+     * @return bill name for each code, indexed by code, null at codes no longer used.
+     */
+    public String[] billNames() {
+        return names.values();
+    }
+
+    // Keep the columns in step with the list.
+    private void listChanged(ListChangeListener.Change<? extends Bill> change) {
+        // Runs of removals in a row, as deleting many bills at once gives, are closed up together.
+        int[] removedFrom = new int[INITIAL_CAPACITY];
+        int[] removedCount = new int[INITIAL_CAPACITY];
+        int runs = 0;
+        int removedSoFar = 0;
+        while (change.next()) {
+            if (change.wasRemoved() && !change.wasAdded()) {
+                if (runs == removedFrom.length) {
+                    removedFrom = Arrays.copyOf(removedFrom, runs * 2);
+                    removedCount = Arrays.copyOf(removedCount, runs * 2);
+                }
+                removedFrom[runs] = change.getFrom() + removedSoFar; // Row before this change's removals
+                removedCount[runs++] = change.getRemovedSize();
+                removedSoFar += change.getRemovedSize();
+                continue;
+            }
+            removeRuns(removedFrom, removedCount, runs);
+            runs = 0;
+            removedSoFar = 0;
+            if (change.wasPermutated()) {
+                permute(change);
+            } else {
+                if (change.wasRemoved()) {
+                    remove(change.getFrom(), change.getRemovedSize());
+                }
+                if (change.wasAdded()) {
+                    insert(change.getFrom(), change.getAddedSubList());
+                }
+            }
+        }
+        removeRuns(removedFrom, removedCount, runs);
+    }
+
+    private void insert(int at, List<? extends Bill> added) {
+        int count = added.size();
+        ensureCapacity(size + count);
+        int moved = size - at;
+        System.arraycopy(rows, at, rows, at + count, moved);
+        System.arraycopy(amountCents, at, amountCents, at + count, moved);
+        System.arraycopy(dueDays, at, dueDays, at + count, moved);
+        System.arraycopy(accountCodes, at, accountCodes, at + count, moved);
+        System.arraycopy(nameCodes, at, nameCodes, at + count, moved);
+        size += count;
+        int row = at;
+        for (Bill bill : added) {
+            rows[row] = bill;
+            fill(row++, bill);
+            listen(bill);
+        }
+        renumber(at, size);
+    }
+
+    private void remove(int from, int count) {
+        for (int row = from; row < from + count; row++) {
+            forget(row);
+        }
+        int moved = size - from - count;
+        System.arraycopy(rows, from + count, rows, from, moved);
+        System.arraycopy(amountCents, from + count, amountCents, from, moved);
+        System.arraycopy(dueDays, from + count, dueDays, from, moved);
+        System.arraycopy(accountCodes, from + count, accountCodes, from, moved);
+        System.arraycopy(nameCodes, from + count, nameCodes, from, moved);
+        Arrays.fill(rows, size - count, size, null);
+        size -= count;
+        renumber(from, size);
+    }
+
+    // Remove several runs of rows, given in order, moving each remaining row once.
+    private void removeRuns(int[] from, int[] count, int runs) {
+        if (runs == 1) {
+            remove(from[0], count[0]);
+            return;
+        }
+        if (runs == 0) {
+            return;
+        }
+        int kept = from[0];
+        for (int run = 0; run < runs; run++) {
+            int end = from[run] + count[run];
+            for (int row = from[run]; row < end; row++) {
+                forget(row);
+            }
+            int next = run + 1 < runs ? from[run + 1] : size;
+            int moved = next - end;
+            System.arraycopy(rows, end, rows, kept, moved);
+            System.arraycopy(amountCents, end, amountCents, kept, moved);
+            System.arraycopy(dueDays, end, dueDays, kept, moved);
+            System.arraycopy(accountCodes, end, accountCodes, kept, moved);
+            System.arraycopy(nameCodes, end, nameCodes, kept, moved);
+            kept += moved;
+        }
+        Arrays.fill(rows, kept, size, null);
+        size = kept;
+        renumber(from[0], size);
+    }
+
+    private void permute(ListChangeListener.Change<? extends Bill> change) {
+        int from = change.getFrom();
+        int to = change.getTo();
+        Bill[] oldRows = Arrays.copyOfRange(rows, from, to);
+        long[] oldAmounts = Arrays.copyOfRange(amountCents, from, to);
+        int[] oldDays = Arrays.copyOfRange(dueDays, from, to);
+        int[] oldAccounts = Arrays.copyOfRange(accountCodes, from, to);
+        int[] oldNames = Arrays.copyOfRange(nameCodes, from, to);
+        for (int i = from; i < to; i++) {
+            int target = change.getPermutation(i);
+            rows[target] = oldRows[i - from];
+            amountCents[target] = oldAmounts[i - from];
+            dueDays[target] = oldDays[i - from];
+            accountCodes[target] = oldAccounts[i - from];
+            nameCodes[target] = oldNames[i - from];
+        }
+        renumber(from, to);
+    }
+
+    private void billChanged(Bill bill) {
+        Integer row = rowOf.get(bill);
+        if (row != null) {
+            int oldAccount = accountCodes[row];
+            int oldName = nameCodes[row];
+            fill(row, bill); // Before releasing, so an unchanged code is not dropped and made again
+            accounts.release(oldAccount);
+            names.release(oldName);
+        }
+    }
+
+    // Record where the bills in rows from to to now are, after rows have moved.
+    private void renumber(int from, int to) {
+        for (int row = from; row < to; row++) {
+            rowOf.put(rows[row], row);
+        }
+    }
+
+    // Stop following a bill whose row is being removed.
+    private void forget(int row) {
+        Bill bill = rows[row];
+        unlisten(bill);
+        rowOf.remove(bill);
+        accounts.release(accountCodes[row]);
+        names.release(nameCodes[row]);
+    }
+
+    private void fill(int row, Bill bill) {
+        amountCents[row] = Math.round(bill.getAmount() * 100);
+        LocalDate due = bill.getDateOfPayment();
+        dueDays[row] = due == null ? NO_DATE : (int) due.toEpochDay();
+        accountCodes[row] = accounts.encode(bill.getBankAccount());
+        nameCodes[row] = names.encode(bill.getName());
+    }
+
+    private void listen(Bill bill) {
+        bill.amountProperty().addListener(billListener);
+        bill.dateOfPaymentProperty().addListener(billListener);
+        bill.bankAccountProperty().addListener(billListener);
+        bill.nameProperty().addListener(billListener);
+    }
+
+    private void unlisten(Bill bill) {
+        bill.amountProperty().removeListener(billListener);
+        bill.dateOfPaymentProperty().removeListener(billListener);
+        bill.bankAccountProperty().removeListener(billListener);
+        bill.nameProperty().removeListener(billListener);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > rows.length) {
+            int grown = Math.max(capacity, rows.length + (rows.length >> 1));
+            rows = Arrays.copyOf(rows, grown);
+            amountCents = Arrays.copyOf(amountCents, grown);
+            dueDays = Arrays.copyOf(dueDays, grown);
+            accountCodes = Arrays.copyOf(accountCodes, grown);
+            nameCodes = Arrays.copyOf(nameCodes, grown);
+        }
+    }
+}
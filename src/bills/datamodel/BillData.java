@@ -1,18 +1,30 @@
 package bills.datamodel;
 
-import javafx.collections.FXCollections;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javax.xml.stream.*;
-import javax.xml.stream.events.*;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /** class BillData holds the list of Bill objects and
- * performs Read/Write operations to file in XML format.
+ * performs Read/Write operations to file through a BillStorage,
+ * XML by default or the binary snapshot format for .bills files.
  *
  * @author Wayne Sandford
  * @version 04-07-2019 02
@@ -20,33 +32,186 @@ import java.time.format.DateTimeFormatter;
 public class BillData {
 
     private static final String BILLS_FILE = "billsFile.xml";
-    private static final String BILL = "bill";
-    private static final String NAME = "name";
-    private static final String DATE_DUE = "date_due";
-    private static final String AMOUNT = "amount";
-    private static final String BANK_ACCOUNT = "bank_account";
-    private static final String DATE_STARTED = "date_started";
-    private static final String DATE_CHANGED = "date_changed";
-    private static final String PREVIOUS_AMOUNT = "previous_amount";
-    private static final String NOTES = "notes";
-
-    private ObservableList<Bill> bills; // Holds Bill objects
-
-    // Constructor
+    private static final String JOURNAL_SUFFIX = ".journal";
+    // The journal is folded into a full save once it holds this many records or one per bill,
+    // whichever is larger, so the cost of a full save is spread over as many edits as bills.
+    private static final int MIN_COMPACT_RECORDS = 1000;
+    // XML files bigger than this are browsed with a PagedBillList rather than loaded.
+    private static final long PAGING_THRESHOLD = Long.getLong("bills.pagingThreshold", 64L << 20);
+
+    private final BillStorage storage; // File format the bills are read from and written to
+    private final BillJournal journal; // Changes made since the last full save
+    private boolean journaled; // When true saveBills() appends changes to the journal
+    private volatile boolean fullSaveNeeded; // Set when a write failed, so the next save is complete
+    private final BillList bills; // Holds Bill objects
+    private int transactionDepth; // Nesting of transaction() calls in progress
+    private boolean totalStale; // Total changed inside a transaction and not yet published
+    private BillColumns columns; // Primitive column copy of bills, created when first asked for
+    private DueDateIndex dueDateIndex; // Bills sorted by due date, created when first asked for
+    private BillSearchIndex searchIndex; // Bills by name and notes words, created when first asked for
+    private final BillIdIndex ids = new BillIdIndex(); // Bills by id, always kept
+    private final Object fileLock = new Object(); // Held while the storage file is written or watched
+    private volatile BillFileWatcher fileWatcher; // Told when the file is written, null when not watched
+    private volatile BillRecords records; // Copies snapshots are taken from, created when first asked for
+
+    // Running total of the bills' amounts, in pence and as a property for the UI
+    private long totalCents;
+    private final ReadOnlyDoubleWrapper total = new ReadOnlyDoubleWrapper(this, "total", 0.0);
+    private boolean verifyingTotal = Boolean.getBoolean("bills.verifyTotal");
+    private boolean parallelLoading = Boolean.getBoolean("bills.parallelLoad");
+    private final ChangeListener<Number> amountListener =
+            (observable, oldAmount, newAmount) -> amountChanged(oldAmount, newAmount);
+
+    // Constructors
     public BillData() {
-        bills = FXCollections.observableArrayList();
+        this(BILLS_FILE);
+    }
+
+    /**
+     * @param billsFile file to keep the bills in, binary when it ends with .bills, otherwise XML,
+     *                  or the JDBC URL of a database when it starts with jdbc:
+     */
+    public BillData(String billsFile) {
+        this(storageFor(billsFile));
+    }
+
+    public BillData(BillStorage storage) {
+        this.storage = storage;
+        Path file = storage.getPath();
+        this.journal = new BillJournal(file == null ? null : Paths.get(file + JOURNAL_SUFFIX));
+        bills = new BillList();
+        bills.addListener(this::billsChanged);
+    }
+
+    private static BillStorage storageFor(String billsFile) {
+        if (billsFile.startsWith(JdbcBillStorage.URL_PREFIX)) {
+            return new JdbcBillStorage(billsFile);
+        }
+        return billsFile.endsWith(BinaryBillStorage.EXTENSION)
+                ? new BinaryBillStorage(Paths.get(billsFile))
+                : new XmlBillStorage(Paths.get(billsFile));
     }
 
     public ObservableList<Bill> getBills() {
         return bills;
     }
 
+    public BillStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Whether the bills file is better browsed a page at a time than loaded: an XML file
+     * larger than the paging threshold (-Dbills.pagingThreshold, in bytes) with no
+     * journaled changes waiting to be applied to it.
+     * @return true if the file should be opened with PagedBillList.
+     */
+    public boolean shouldPage() {
+        Path file = storage.getPath();
+        try {
+            return storage instanceof XmlBillStorage
+                    && Files.size(file) > PAGING_THRESHOLD
+                    && Files.notExists(Paths.get(file + JOURNAL_SUFFIX));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Columnar copy of the bills for totals, filters and group-bys over large lists.
+     * Built on first use and kept in step with the bills list from then on.
+     * @return the bill columns.
+     */
+    public BillColumns getColumns() {
+        if (columns == null) {
+            columns = new BillColumns(bills);
+        }
+        return columns;
+    }
+
+    /**
+     * Index of the bills by due date for range queries such as what is due this week.
+     * Built on first use and kept in step with the bills list from then on.
+     * @return the due date index.
+     */
+    public DueDateIndex getDueDateIndex() {
+        if (dueDateIndex == null) {
+            dueDateIndex = new DueDateIndex(bills);
+        }
+        return dueDateIndex;
+    }
+
+    /**
+     * Index of the words in the bills' names and notes for searching.
+     * Built on first use, unless buildSearchIndexLater() has built it already, and kept
+     * in step with the bills list from then on.
+     * @return the search index.
+     */
+    public BillSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new BillSearchIndex(bills);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Start building the search index on a background thread, so searching is ready soon
+     * after the bills load without first holding up this thread to index every bill.
+     * Must be called on the thread that changes the bills.
+     * @param owner runs tasks on the thread that changes the bills, such as Platform::runLater.
+     * @return completes on the owner thread with the index getSearchIndex() gives from then on.
+     */
+    public CompletableFuture<BillSearchIndex> buildSearchIndexLater(Executor owner) {
+        if (searchIndex != null) {
+            return CompletableFuture.completedFuture(searchIndex);
+        }
+        return BillSearchIndex.buildLater(bills, ForkJoinPool.commonPool(), owner).thenApply(built -> {
+            if (searchIndex == null) {
+                searchIndex = built;
+            } else {
+                built.detach(); // getSearchIndex() was called first and built one itself
+            }
+            return searchIndex;
+        });
+    }
+
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    /**
+     * Switch journaled persistence on or off. When on, saveBills() appends the changes made
+     * through addBill(), updateBill() and deleteBill() to a journal file instead of
+     * rewriting the whole bills file, and only occasionally compacts the journal into it.
+     * Storage that is not a local file, such as an in-memory or server database, has nowhere
+     * to keep a journal, so stays unjournaled; a database only writes the changed rows anyway.
+     * @param journaled true to save changes to the journal.
+     */
+    public void setJournaled(boolean journaled) {
+        this.journaled = journaled && journal.getPath() != null;
+    }
+
     /**
      * Add a new Bill.
      * @param bill a Bill object to add to List of Bills.
      */
     public void addBill(Bill bill) {
+        assignId(bill); // Before the journal records it
         bills.add(bill);
+        if (journaled) {
+            journal.recordAdd(bill);
+        }
+    }
+
+    /**
+     * Record that a bill already in the list has been edited, so the change is saved.
+     * @param bill the edited Bill object.
+     */
+    public void updateBill(Bill bill) {
+        if (journaled && indexOf(bill) >= 0) {
+            journal.recordUpdate(bill);
+        }
+        recordEdited(bill);
     }
 
     /**
@@ -54,234 +219,518 @@ public class BillData {
      * @param bill a Bill object to remove from List of Bills.
      */
     public void deleteBill(Bill bill) {
-        bills.remove(bill);
+        int index = indexOf(bill);
+        if (index >= 0) {
+            bills.remove(index);
+            forgetId(bill); // Now, as in a transaction the list's listeners run only at the end
+            if (journaled) {
+                journal.recordDelete(bill);
+            }
+        }
     }
 
     /**
-     * Load bills from XML file into bills list.
+     * @param id a bill's id.
+     * @return the bill with the id, or null if there is none.
      */
-    public void loadBills() {
-        try {
-            // First, create a new XMLInputFactory
-            XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-            // Setup a new eventReader
-            InputStream in = new FileInputStream(BILLS_FILE);
-            XMLEventReader eventReader = inputFactory.createXMLEventReader(in);
-            // read the XML document
-            Bill bill = null;
-
-            while (eventReader.hasNext()) {
-                XMLEvent event = eventReader.nextEvent();
-
-                if (event.isStartElement()) {
-                    StartElement startElement = event.asStartElement();
-                    // If we have a contact item, we create a new contact
-                    if (startElement.getName().getLocalPart().equals(BILL)) {
-                        bill = new Bill();
-                        continue;
-                    }
+    public Bill getBill(long id) {
+        return ids.get(id);
+    }
 
-                    if (event.isStartElement()) {
-                        if (event.asStartElement().getName().getLocalPart()
-                                .equals(NAME)) {
-                            event = eventReader.nextEvent();
-                            bill.setName(event.asCharacters().getData());
-                            continue;
-                        }
-                    }
+    /**
+     * Edit the bill with the id and record the edit so it is saved.
+     * @param id the bill's id.
+     * @param edit applied to the bill.
+     * @return false if there is no bill with the id.
+     */
+    public boolean updateBill(long id, Consumer<? super Bill> edit) {
+        Bill bill = ids.get(id);
+        if (bill == null) {
+            return false;
+        }
+        edit.accept(bill);
+        updateBill(bill);
+        return true;
+    }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(DATE_DUE)) {
-                        event = eventReader.nextEvent();
+    /**
+     * Remove the bill with the id.
+     * @param id the bill's id.
+     * @return false if there is no bill with the id.
+     */
+    public boolean deleteBill(long id) {
+        Bill bill = ids.get(id);
+        if (bill == null) {
+            return false;
+        }
+        deleteBill(bill);
+        return true;
+    }
 
-                        // Convert text to LocalDate object.
-                        String date = (event.asCharacters().getData());
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    /**
+     * Add many bills at the end of the list as one change.
+     * @param added the bills to add, in order.
+     */
+    public void addBills(Collection<? extends Bill> added) {
+        for (Bill bill : added) {
+            assignId(bill);
+        }
+        bills.addAll(added);
+        if (journaled) {
+            for (Bill bill : added) {
+                journal.recordAdd(bill);
+            }
+        }
+    }
 
-                        bill.setDateOfPayment(LocalDate.parse(date, formatter));
-                        continue;
-                    }
+    /**
+     * Remove many bills as one change. Bills not in the list are ignored.
+     * @param removed the bills to remove.
+     */
+    public void deleteBills(Collection<? extends Bill> removed) {
+        Set<Bill> gone = Collections.newSetFromMap(new IdentityHashMap<>(removed.size()));
+        gone.addAll(removed);
+        if (journaled) {
+            for (Bill bill : bills) {
+                if (gone.contains(bill)) {
+                    journal.recordDelete(bill);
+                }
+            }
+        }
+        bills.removeAll(gone);
+        for (Bill bill : gone) {
+            forgetId(bill);
+        }
+    }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(AMOUNT)) {
-                        event = eventReader.nextEvent();
-                        bill.setAmount(Double.parseDouble(event.asCharacters().getData()));
-                        continue;
+    /**
+     * Edit many bills in one transaction and record every edit so it is saved.
+     * @param edited the bills to edit, which should all be in the list.
+     * @param edit applied to each bill, for example bill -> bill.setBankAccount("Joint").
+     */
+    public void updateBills(Collection<? extends Bill> edited, Consumer<? super Bill> edit) {
+        transaction(() -> {
+            for (Bill bill : edited) {
+                edit.accept(bill);
+                recordEdited(bill);
+            }
+            if (journaled) {
+                Set<Bill> changed = Collections.newSetFromMap(new IdentityHashMap<>(edited.size()));
+                changed.addAll(edited);
+                for (Bill bill : bills) {
+                    if (changed.contains(bill)) {
+                        journal.recordUpdate(bill);
                     }
+                }
+            }
+        });
+    }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(NOTES)) {
-                        event = eventReader.nextEvent();
-                        bill.setNotes(event.asCharacters().getData());
-                        continue;
-                    }
+    /**
+     * Run a group of changes made through this BillData or straight to the bills list,
+     * and pass them on as one. The list's listeners, the table and the indexes built on
+     * it, see a single change when the outermost transaction ends, and the total is
+     * updated once. Nothing is saved until saveBills() or a BillSaver is asked to after,
+     * so the whole batch is written once. Changes are not undone if the edits throw.
+     * @param edits the changes to make.
+     */
+    public void transaction(Runnable edits) {
+        transactionDepth++;
+        bills.beginBatch();
+        try {
+            edits.run();
+        } finally {
+            transactionDepth--;
+            bills.endBatch(); // Listeners run here, the total with them if the list changed
+            if (transactionDepth == 0 && totalStale) {
+                totalChanged();
+            }
+            if (transactionDepth == 0 && records != null) {
+                records.copyUpdated(this::indexOf);
+            }
+        }
+    }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(BANK_ACCOUNT)) {
-                        event = eventReader.nextEvent();
-                        bill.setBankAccount(event.asCharacters().getData());
-                        continue;
-                    }
+    /**
+     * The bills as they are now, for reading on any thread while they go on changing.
+     * The first call must be made on the thread that changes the bills, as it starts
+     * keeping the copies snapshots are taken from; after that any thread may call. The
+     * copies follow every change to the list, and edits to bills once recorded with
+     * updateBill() or updateBills().
+     * @return an unchanging copy of the bills, shared until they next change.
+     */
+    public BillSnapshot snapshot() {
+        BillRecords current = records;
+        if (current == null) {
+            current = new BillRecords(bills);
+            records = current;
+        }
+        return current.snapshot();
+    }
+
+    /**
+     * Load bills from the storage file into bills list, applying any journaled changes,
+     * and add them all to the list in one go.
+     */
+    public void loadBills() {
+        List<Bill> loaded = new ArrayList<>();
+        long snapshotSeq = 0;
+        try {
+            if (parallelLoading && storage instanceof XmlBillStorage) {
+                snapshotSeq = ((XmlBillStorage) storage).loadParallel(loaded, ForkJoinPool.commonPool());
+            } else {
+                snapshotSeq = storage.load(loaded);
+            }
+        }
+        catch (FileNotFoundException | NoSuchFileException e) {
+            //e.printStackTrace();
+        }
+        catch (IOException e) {
+            System.out.println("Problem reading Bills file: " + e.getMessage());
+            e.printStackTrace();
+        }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(DATE_STARTED)) {
-                        event = eventReader.nextEvent();
+        if (assignMissingIds(loaded, snapshotSeq)) {
+            fullSaveNeeded = true; // Write the new ids to the file
+        }
 
-                        // Convert text to LocalDate object.
-                        String date = (event.asCharacters().getData());
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        // Apply changes saved to the journal since the file was last written in full.
+        try {
+            journal.replay(loaded, snapshotSeq);
+        } catch (IOException e) {
+            System.out.println("Problem reading bills journal: " + e.getMessage());
+            e.printStackTrace();
+            setJournalAside();
+        }
+        bills.addAll(loaded); // Single change event for the whole file.
+    }
 
-                        bill.setDateStarted(LocalDate.parse(date, formatter));
-                        continue;
-                    }
+    // Keep a journal that cannot be replayed out of the way of the next full save, which
+    // would delete it, so the changes in it can still be recovered by hand.
+    private void setJournalAside() {
+        fullSaveNeeded = true;
+        try {
+            System.out.println("Bills journal moved to " + journal.setAside());
+        } catch (IOException e) {
+            System.out.println("Problem moving bills journal aside: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(DATE_CHANGED)) {
-                        event = eventReader.nextEvent();
+    public boolean isParallelLoading() {
+        return parallelLoading;
+    }
 
-                        // Convert text to LocalDate object.
-                        String date = (event.asCharacters().getData());
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    /**
+     * Switch on parsing an XML bills file on several threads in loadBills(), which pays
+     * off for files of tens of megabytes or more. Also switched on by -Dbills.parallelLoad=true.
+     * @param parallelLoading true to load in parallel.
+     */
+    public void setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
 
-                        bill.setDateChanged(LocalDate.parse(date, formatter));
-                        continue;
-                    }
+    /**
+     * Pass every saved bill to an action without adding them to the list, so bills files
+     * larger than memory can be read in constant memory. If the journal holds changes not
+     * yet in the file, the bills are loaded and the changes applied first instead.
+     * @param action called with each bill, in list order.
+     * @throws IOException if the file or journal cannot be read.
+     */
+    public void forEachSavedBill(Consumer<? super Bill> action) throws IOException {
+        if (journal.getPath() == null || Files.notExists(journal.getPath())) {
+            try {
+                storage.forEach(action);
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // No bills saved yet
+            }
+            return;
+        }
+        List<Bill> loaded = new ArrayList<>();
+        long snapshotSeq = 0;
+        try {
+            snapshotSeq = storage.load(loaded);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            // Only journaled bills so far
+        }
+        journal.replay(loaded, snapshotSeq);
+        loaded.forEach(action);
+    }
 
-                    if (event.asStartElement().getName().getLocalPart()
-                            .equals(PREVIOUS_AMOUNT)) {
-                        event = eventReader.nextEvent();
-                        bill.setPreviousAmount(Double.parseDouble(event.asCharacters().getData()));
-                        continue;
-                    }
+    /**
+     * Add the bills from an XML file to the list. The next save writes the whole list.
+     * @param xmlFile file to import.
+     * @throws IOException if the file cannot be read.
+     */
+    public void importXml(Path xmlFile) throws IOException {
+        List<Bill> imported = new ArrayList<>();
+        new XmlBillStorage(xmlFile).load(imported);
+        bills.addAll(imported);
+        fullSaveNeeded = true;
+    }
 
-                }
+    /**
+     * Write the list to an XML file for exchanging with other programs.
+     * @param xmlFile file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void exportXml(Path xmlFile) throws IOException {
+        new XmlBillStorage(xmlFile).save(bills, 0);
+    }
 
-                // If we reach the end of a contact element, we add it to the list
-                if (event.isEndElement()) {
-                    EndElement endElement = event.asEndElement();
-                    if (endElement.getName().getLocalPart().equals(BILL)) {
-                        bills.add(bill);
-                    }
-                }
-            }
+    /**
+     * Save bills. When journaled, only the changes since the last save are appended to the
+     * journal until it is large enough to be compacted into a full save of the XML file.
+     */
+    public void saveBills() {
+        writeSave(prepareSave());
+    }
+
+    /**
+     * Capture what the next save needs to write. Must be called on the thread that
+     * changes the bills list; the result can then be written on any thread.
+     * @return the save to pass to writeSave().
+     */
+    PendingSave prepareSave() {
+        if (journaled && !fullSaveNeeded
+                && journal.getRecordCount() < Math.max(MIN_COMPACT_RECORDS, bills.size())) {
+            return new PendingSave(null, 0, journal.takePending());
         }
-        catch (FileNotFoundException e) {
-            //e.printStackTrace();
+        fullSaveNeeded = false;
+        journal.compacted();
+        List<Bill> copy = new ArrayList<>(bills.size());
+        for (Bill bill : bills) {
+            copy.add(copyOf(bill));
         }
-        catch (XMLStreamException e) {
+        return new PendingSave(copy, journal.getLastSeq(), Collections.emptyList());
+    }
+
+    /**
+     * Write a save captured by prepareSave(). Does not touch the bills list.
+     * @param save the save to write.
+     */
+    void writeSave(PendingSave save) {
+        if (save.getBills() != null && !writeBillsFile(save.getBills(), save.getSeq())) {
+            fullSaveNeeded = true;
+            return;
+        }
+        try {
+            journal.append(save.getJournalRecords());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Problem writing bills journal: " + e.getMessage());
             e.printStackTrace();
+            fullSaveNeeded = true; // Journal may be incomplete, next save writes everything.
         }
     }
 
+    Object getFileLock() {
+        return fileLock;
+    }
+
+    void setFileWatcher(BillFileWatcher fileWatcher) {
+        this.fileWatcher = fileWatcher;
+    }
+
     /**
-     * Save bills to XML file.
+     * Make the next save write the whole file, as after the file was changed by another program.
      */
-    public void saveBills() {
+    void requireFullSave() {
+        fullSaveNeeded = true;
+    }
 
+    private static Bill copyOf(Bill bill) {
+        Bill copy = new Bill(bill.getName(), bill.getDateOfPayment(), bill.getAmount(), bill.getBankAccount(),
+                bill.getNotes(), bill.getDateStarted(), bill.getDateChanged(), bill.getPreviousAmount());
+        copy.setRecurrence(bill.getRecurrence());
+        copy.setId(bill.getId());
+        return copy;
+    }
+
+    /**
+     * Write every bill to the storage file, replacing the previous file and the journal.
+     * @param billsToWrite the bills to write.
+     * @param seq the journal sequence number the bills include.
+     * @return true if the file was written.
+     */
+    private boolean writeBillsFile(List<Bill> billsToWrite, long seq) {
         try {
-            // create an XMLOutputFactory
-            XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-            // create XMLEventWriter
-            XMLEventWriter eventWriter = outputFactory
-                    .createXMLEventWriter(new FileOutputStream(BILLS_FILE));
-            // create an EventFactory
-            XMLEventFactory eventFactory = XMLEventFactory.newInstance();
-            XMLEvent end = eventFactory.createDTD("\n");
-            // create and write Start Tag
-            StartDocument startDocument = eventFactory.createStartDocument();
-            eventWriter.add(startDocument);
-            eventWriter.add(end);
-
-            StartElement contactsStartElement = eventFactory.createStartElement("",
-                    "", "contacts");
-            eventWriter.add(contactsStartElement);
-            eventWriter.add(end);
-
-            for (Bill bill: bills) {
-                saveBill(eventWriter, eventFactory, bill);
+            synchronized (fileLock) {
+                storage.save(billsToWrite, seq);
+                BillFileWatcher watcher = fileWatcher;
+                if (watcher != null) {
+                    watcher.saved(); // Before it can see the change, so it is not taken as an outside one
+                }
             }
-
-            eventWriter.add(eventFactory.createEndElement("", "", "bills"));
-            eventWriter.add(end);
-            eventWriter.add(eventFactory.createEndDocument());
-            eventWriter.close();
-        }
-        catch (FileNotFoundException e) {
-            System.out.println("Problem with Bills file: " + e.getMessage());
-            e.printStackTrace();
+            journal.deleteFile();
+            return true;
         }
-        catch (XMLStreamException e) {
-            System.out.println("Problem writing bill: " + e.getMessage());
+        catch (IOException | RuntimeException e) { // A bill the format cannot hold must not stop the saver
+            System.out.println("Problem writing Bills file: " + e.getMessage());
             e.printStackTrace();
+            return false;
         }
     }
 
     /**
-     * Write one bill to XML file
-     * @param eventWriter a
-     * @param eventFactory a
-     * @param bill a Bill object that will be written to file.
-     * @throws FileNotFoundException file not found.
-     * @throws XMLStreamException unexpected process.
+     * Total of all the bills, kept up to date as bills are added, removed or their amounts change.
+     * @return total of the bills' amounts.
      */
-    private void saveBill(XMLEventWriter eventWriter, XMLEventFactory eventFactory, Bill bill)
-            throws FileNotFoundException, XMLStreamException {
-
-        XMLEvent end = eventFactory.createDTD("\n");
-
-        // create contact open tag
-        StartElement configStartElement = eventFactory.createStartElement("",
-                "", BILL);
-        eventWriter.add(configStartElement);
-        eventWriter.add(end);
-        // Write the different nodes
-        createNode(eventWriter, NAME, bill.getName());
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        String formattedString = bill.getDateOfPayment().format(formatter);
-        createNode(eventWriter, DATE_DUE, formattedString);
-        createNode(eventWriter, AMOUNT, Double.toString(bill.getAmount()));
-        createNode(eventWriter, BANK_ACCOUNT, bill.getBankAccount());
-        formattedString = bill.getDateStarted().format(formatter);
-        createNode(eventWriter, DATE_STARTED, formattedString);
-        formattedString = bill.getDateChanged().format(formatter);
-        createNode(eventWriter, DATE_CHANGED, formattedString);
-        createNode(eventWriter, PREVIOUS_AMOUNT, Double.toString(bill.getPreviousAmount()));
-        createNode(eventWriter, NOTES, bill.getNotes());
+    public double calculateTotal () {
+        return totalCents / 100.0;
+    }
 
-        eventWriter.add(eventFactory.createEndElement("", "", BILL));
-        eventWriter.add(end);
+    /**
+     * @return read only property holding the total of all the bills, for binding to the UI.
+     */
+    public ReadOnlyDoubleProperty totalProperty() {
+        return total.getReadOnlyProperty();
     }
 
-    private void createNode(XMLEventWriter eventWriter, String name,
-                            String value) throws XMLStreamException {
+    public boolean isVerifyingTotal() {
+        return verifyingTotal;
+    }
 
-        XMLEventFactory eventFactory = XMLEventFactory.newInstance();
-        XMLEvent end = eventFactory.createDTD("\n");
-        XMLEvent tab = eventFactory.createDTD("\t");
-        // create Start node
-        StartElement sElement = eventFactory.createStartElement("", "", name);
-        eventWriter.add(tab);
-        eventWriter.add(sElement);
-        // create Content
-        Characters characters = eventFactory.createCharacters(value);
-        eventWriter.add(characters);
-        // create End node
-        EndElement eElement = eventFactory.createEndElement("", "", name);
-        eventWriter.add(eElement);
-        eventWriter.add(end);
+    /**
+     * Switch on checking the running total against a full recalculation after every change.
+     * Slow - meant for testing. Also switched on by -Dbills.verifyTotal=true.
+     * @param verifyingTotal true to cross-check the total.
+     */
+    public void setVerifyingTotal(boolean verifyingTotal) {
+        this.verifyingTotal = verifyingTotal;
     }
 
     /**
-     * Calculate total of all the bills.
+     * Add up every bill's amount from scratch.
+     * @return total of all the bills in pence.
      */
-    public double calculateTotal () {
+    public long recalculateTotalCents() {
+        long sum = 0;
+        for (Bill aBill : this.bills) {
+            sum += toCents(aBill.getAmount());
+        }
+        return sum;
+    }
+
+    private void billsChanged(ListChangeListener.Change<? extends Bill> change) {
+        // Removals first, so a bill added in the same change can take over a removed bill's id.
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    ids.setPositionHint(bills.get(i).getId(), i); // Same bills, same total.
+                }
+                continue;
+            }
+            for (Bill removed : change.getRemoved()) {
+                removed.removeAmountListener(amountListener);
+                totalCents -= toCents(removed.getAmount());
+                forgetId(removed);
+            }
+        }
+        change.reset();
+        while (change.next()) {
+            int position = change.getFrom();
+            for (Bill added : change.getAddedSubList()) {
+                added.addAmountListener(amountListener);
+                totalCents += toCents(added.getAmount());
+                assignId(added);
+                ids.put(added, position++);
+            }
+        }
+        totalChanged();
+    }
+
+    // Give the bill a new id unless it has one no other bill in the list is using.
+    private void assignId(Bill bill) {
+        Bill holder = ids.get(bill.getId());
+        if (bill.getId() <= 0 || (holder != null && holder != bill)) {
+            bill.setId(journal.nextId());
+        } else {
+            journal.reserveId(bill.getId());
+        }
+    }
+
+    private void forgetId(Bill bill) {
+        if (ids.get(bill.getId()) == bill) {
+            ids.remove(bill.getId());
+        }
+    }
 
-        double total = 0.0;
+    // Bills from a file written before bills had ids get them in file order after the
+    // highest id in the file, so they come out the same each time until it is saved again.
+    // They also start past the file's journal sequence number, which new ids are taken
+    // from, so the id of a bill deleted before the file was saved is not given out again.
+    private static boolean assignMissingIds(List<Bill> loaded, long snapshotSeq) {
+        long highest = Math.max(0, snapshotSeq);
+        for (Bill bill : loaded) {
+            highest = Math.max(highest, bill.getId());
+        }
+        boolean assigned = false;
+        for (Bill bill : loaded) {
+            if (bill.getId() <= 0) {
+                bill.setId(++highest);
+                assigned = true;
+            }
+        }
+        return assigned;
+    }
 
-        for(Bill aBill : this.bills){
-            total += aBill.getAmount();
+    // Have snapshots copy an edited bill again, at the end of the transaction if in one.
+    private void recordEdited(Bill bill) {
+        BillRecords current = records;
+        if (current != null) {
+            current.updated(bill);
+            if (transactionDepth == 0) {
+                current.copyUpdated(this::indexOf);
+            }
         }
-        return total;
+    }
+
+    // Where the bill is in the list, looking out from where it was last seen.
+    private int indexOf(Bill bill) {
+        int hint = ids.get(bill.getId()) == bill ? ids.positionHint(bill.getId()) : -1;
+        if (hint < 0) {
+            return bills.indexOf(bill); // Not indexed yet, such as when added in a transaction
+        }
+        int size = bills.size();
+        for (int distance = 0; hint - distance >= 0 || hint + distance < size; distance++) {
+            int after = hint + distance;
+            if (after < size && bills.get(after) == bill) {
+                ids.setPositionHint(bill.getId(), after);
+                return after;
+            }
+            int before = hint - distance;
+            if (before >= 0 && before < size && bills.get(before) == bill) {
+                ids.setPositionHint(bill.getId(), before);
+                return before;
+            }
+        }
+        return -1;
+    }
+
+    private void amountChanged(Number oldAmount, Number newAmount) {
+        totalCents += toCents(newAmount.doubleValue()) - toCents(oldAmount.doubleValue());
+        totalChanged();
+    }
+
+    private void totalChanged() {
+        if (transactionDepth > 0) {
+            totalStale = true;
+            return;
+        }
+        totalStale = false;
+        if (verifyingTotal) {
+            long expected = recalculateTotalCents();
+            if (expected != totalCents) {
+                System.out.println("Running total " + totalCents + " differs from recalculated total " + expected);
+                totalCents = expected;
+            }
+        }
+        total.set(totalCents / 100.0);
+    }
+
+    // Amounts are summed in whole pence so adding and taking away never drifts.
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
     }
 
 }
@@ -0,0 +1,191 @@
+package bills.datamodel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * class BillFileIndex is an on-disk index of where each bill element starts in an XML bills file.
+ *
+ * The index is kept beside the bills file (billsFile.xml.idx) and memory mapped, so even
+ * tens of millions of offsets take no heap. It is rebuilt whenever the bills file's size
+ * or modification time no longer match. Building it also adds up the bills' amounts.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BillFileIndex {
+
+    private static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int MAX_TAG = 16; // Longer tags are not ones we look for
+
+    private static final byte[] BILL_TAG = "bill".getBytes();
+    private static final byte[] BILL_END_TAG = "/bill".getBytes();
+    private static final byte[] AMOUNT_TAG = "amount".getBytes();
+
+    private final int size;
+    private final long totalCents;
+    private final LongBuffer offsets; // size + 1 entries, the last is the end of the last bill
+
+    private BillFileIndex(int size, long totalCents, LongBuffer offsets) {
+        this.size = size;
+        this.totalCents = totalCents;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Open the index for a bills file, building it first if it is missing or out of date.
+     * @param billsFile XML bills file.
+     * @return the index.
+     * @throws IOException if the bills file or the index cannot be read or written.
+     */
+    static BillFileIndex open(Path billsFile) throws IOException {
+        Path indexFile = Paths.get(billsFile + SUFFIX);
+        long fileSize = Files.size(billsFile);
+        long modified = Files.getLastModifiedTime(billsFile).toMillis();
+
+        if (Files.exists(indexFile)) {
+            BillFileIndex index = map(indexFile, fileSize, modified);
+            if (index != null) {
+                return index;
+            }
+        }
+        build(billsFile, indexFile, fileSize, modified);
+        BillFileIndex index = map(indexFile, fileSize, modified);
+        if (index == null) {
+            throw new IOException("Could not index " + billsFile);
+        }
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getTotalCents() {
+        return totalCents;
+    }
+
+    /**
+     * @param bill position of a bill in the file, or size() for the end of the last bill.
+     * @return byte offset of the bill's opening tag.
+     */
+    long offset(int bill) {
+        return offsets.get(bill);
+    }
+
+    // Map an existing index, or return null if it does not match the bills file.
+    private static BillFileIndex map(Path indexFile, long fileSize, long modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != fileSize || buffer.getLong() != modified) {
+                return null;
+            }
+            long totalCents = buffer.getLong();
+            int size = buffer.getInt();
+            buffer.position(HEADER_SIZE);
+            if (buffer.remaining() != (size + 1L) * Long.BYTES) {
+                return null;
+            }
+            return new BillFileIndex(size, totalCents, buffer.slice().asLongBuffer());
+        }
+    }
+
+    // Scan the bills file byte by byte for <bill>, </bill> and <amount> tags.
+    private static void build(Path billsFile, Path indexFile, long fileSize, long modified) throws IOException {
+        Path temp = Paths.get(indexFile + ".tmp");
+        int count = 0;
+        long totalCents = 0;
+        long billsEnd = 0;
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(billsFile.toFile()), 1 << 16);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(temp.toFile()), 1 << 16))) {
+            out.write(new byte[HEADER_SIZE]); // Filled in once the count is known
+
+            byte[] tag = new byte[MAX_TAG];
+            int tagLength = -1;     // -1 when not inside a tag
+            long tagStart = 0;
+            StringBuilder amount = null; // Set while reading an amount's text
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '<') {
+                    if (amount != null) {
+                        try {
+                            totalCents += Math.round(Double.parseDouble(amount.toString().trim()) * 100);
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Bad amount \"" + amount.toString().trim() + "\" before byte "
+                                    + position + " of " + billsFile, e);
+                        }
+                        amount = null;
+                    }
+                    tagLength = 0;
+                    tagStart = position;
+                } else if (tagLength >= 0) {
+                    if (b == '>') {
+                        if (matches(tag, tagLength, BILL_TAG)) {
+                            out.writeLong(tagStart);
+                            count++;
+                        } else if (matches(tag, tagLength, BILL_END_TAG)) {
+                            billsEnd = position + 1;
+                        } else if (matches(tag, tagLength, AMOUNT_TAG)) {
+                            amount = new StringBuilder();
+                        }
+                        tagLength = -1;
+                    } else if (tagLength < MAX_TAG) {
+                        tag[tagLength++] = (byte) b;
+                    } else {
+                        tagLength = -1;
+                    }
+                } else if (amount != null) {
+                    amount.append((char) b);
+                }
+                position++;
+            }
+            out.writeLong(billsEnd);
+        }
+
+        try (RandomAccessFile header = new RandomAccessFile(temp.toFile(), "rw")) {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(fileSize);
+            header.writeLong(modified);
+            header.writeLong(totalCents);
+            header.writeInt(count);
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean matches(byte[] tag, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (tag[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,472 @@
+package bills.datamodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class BillFileWatcher notices when an XML bills file is changed by another program,
+ * such as a sync tool, and applies just the bills that changed to the BillData.
+ *
+ * Each bill element in the file is hashed as it was last read or written. When the file
+ * changes it is scanned again as raw bytes, without parsing, and compared by bill id:
+ * only elements whose hash differs are parsed, and only those bills are added, removed
+ * or edited in place, in one transaction. The Bill objects that did not change are the
+ * same objects as before, so the table keeps its selection and scroll position. Outside
+ * edits win over unsaved edits to the same bill, and the merged bills are then saved in
+ * full, so the next save does not overwrite them.
+ *
+ * BillData holds its file lock while it writes the file and tells the watcher, so its
+ * own saves are never taken for outside changes.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillFileWatcher implements Closeable {
+
+    private static final long QUIET_MILLIS = 200; // Wait for the writer to finish before reading
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final byte[] CHUNK_START = "<chunk>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNK_END = "</chunk>".getBytes(StandardCharsets.UTF_8);
+
+    private final BillData data;
+    private final Path file;
+    private final Executor owner;
+    private final Runnable afterChange;
+    private final WatchService watchService;
+    private final Thread watcher;
+
+    private Scan baseline; // The file as last read or written, null if unknown. Guarded by data.getFileLock()
+
+    // Metrics, guarded by this
+    private long reloads;
+    private long billsAdded;
+    private long billsRemoved;
+    private long billsChanged;
+
+    /**
+     * Start watching the bills file. Create on the thread that changes the bills, after
+     * they have been loaded.
+     * @param data the bills, kept in an XML file.
+     * @param owner runs a task on the thread that changes the bills, such as Platform::runLater.
+     * @param afterChange run on that thread after outside changes are applied, for
+     *                    example a BillSaver's requestSave, or null to save later.
+     * @throws IOException if the file's directory cannot be watched.
+     */
+    public BillFileWatcher(BillData data, Executor owner, Runnable afterChange) throws IOException {
+        if (!(data.getStorage() instanceof XmlBillStorage)) {
+            throw new IllegalArgumentException("Only XML bills files can be watched");
+        }
+        this.data = data;
+        this.file = data.getStorage().getPath().toAbsolutePath();
+        this.owner = owner;
+        this.afterChange = afterChange;
+        watchService = file.getFileSystem().newWatchService();
+        file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        synchronized (data.getFileLock()) {
+            baseline = scanOrNull();
+        }
+        data.setFileWatcher(this);
+        watcher = new Thread(this::watchLoop, "bill-file-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stop watching.
+     */
+    @Override
+    public void close() throws IOException {
+        data.setFileWatcher(null);
+        watchService.close(); // Ends the watch loop
+    }
+
+    public synchronized long getReloads() {
+        return reloads;
+    }
+
+    public synchronized long getBillsAdded() {
+        return billsAdded;
+    }
+
+    public synchronized long getBillsRemoved() {
+        return billsRemoved;
+    }
+
+    public synchronized long getBillsChanged() {
+        return billsChanged;
+    }
+
+    /**
+     * Called by BillData, holding the file lock, when it has written the file.
+     */
+    void saved() {
+        baseline = scanOrNull();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                if (!concernsFile(watchService.take())) {
+                    continue;
+                }
+                // A file is often written in several steps; wait until it has been quiet a while.
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    concernsFile(key);
+                }
+                try {
+                    reload();
+                } catch (IOException e) {
+                    // Most likely caught part way through being written; its next change brings us back.
+                    System.out.println("Problem reading changed bills file: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // A value that cannot be read must not stop later changes being seen.
+                    System.out.println("Problem reading changed bills file: " + e);
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    // Take the key's events and reset it, returning true if any were for the bills file.
+    private boolean concernsFile(WatchKey key) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                concerned = true;
+            }
+        }
+        key.reset();
+        return concerned;
+    }
+
+    // Work out what changed since the baseline, and hand it to the owning thread to apply.
+    private void reload() throws IOException {
+        Changes changes;
+        synchronized (data.getFileLock()) {
+            Scan current;
+            try {
+                current = Scan.read(file);
+            } catch (NoSuchFileException e) {
+                return; // Removed, or being replaced; never taken as every bill deleted
+            }
+            if (baseline == null) {
+                baseline = current; // Nothing to compare against, so start from here
+                return;
+            }
+            changes = compare(baseline, current);
+            baseline = current;
+        }
+        if (!changes.isEmpty()) {
+            owner.execute(() -> apply(changes));
+        }
+    }
+
+    private Changes compare(Scan before, Scan after) throws IOException {
+        Changes changes = new Changes();
+        boolean[] matched = new boolean[before.size];
+        Map<Long, Integer> unnumbered = before.unnumberedHashes(); // Bills written before ids, matched by hash
+        List<Integer> toParse = new ArrayList<>();
+        boolean[] edited = new boolean[after.size]; // Otherwise new
+        for (int i = 0; i < after.size; i++) {
+            long id = after.ids[i];
+            if (id <= 0) {
+                Integer count = unnumbered.get(after.hashes[i]);
+                if (count == null) {
+                    toParse.add(i);
+                } else if (count == 1) {
+                    unnumbered.remove(after.hashes[i]);
+                } else {
+                    unnumbered.put(after.hashes[i], count - 1);
+                }
+                continue;
+            }
+            int j = before.indexOf(id);
+            if (j < 0 || matched[j]) {
+                toParse.add(i); // New, or a copy of a bill already seen
+            } else {
+                matched[j] = true;
+                if (before.hashes[j] != after.hashes[i]) {
+                    toParse.add(i);
+                    edited[i] = true;
+                }
+            }
+        }
+        for (int j = 0; j < before.size; j++) {
+            if (before.ids[j] > 0 && !matched[j]) {
+                changes.removedIds.add(before.ids[j]);
+            }
+        }
+
+        List<Bill> parsed = parse(after, toParse);
+        for (int k = 0; k < toParse.size(); k++) {
+            (edited[toParse.get(k)] ? changes.changed : changes.added).add(parsed.get(k));
+        }
+        return changes;
+    }
+
+    // Parse the chosen bill elements only, read straight from where they are in the file.
+    private List<Bill> parse(Scan scan, List<Integer> elements) throws IOException {
+        List<Bill> parsed = new ArrayList<>(elements.size());
+        if (elements.isEmpty()) {
+            return parsed;
+        }
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        xml.write(CHUNK_START);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i : elements) {
+                ByteBuffer element = ByteBuffer.allocate(scan.lengths[i]);
+                while (element.hasRemaining() && channel.read(element, scan.starts[i] + element.position()) >= 0) {
+                    // Read until full
+                }
+                xml.write(element.array(), 0, element.position());
+            }
+        }
+        xml.write(CHUNK_END);
+        XmlBillStorage.readBills(new ByteArrayInputStream(xml.toByteArray()), parsed::add, Integer.MAX_VALUE);
+        if (parsed.size() != elements.size()) {
+            throw new IOException("Changed bills could not all be read from " + file);
+        }
+        return parsed;
+    }
+
+    // On the owning thread.
+    private void apply(Changes changes) {
+        data.transaction(() -> {
+            List<Bill> removed = new ArrayList<>();
+            for (long id : changes.removedIds) {
+                Bill bill = data.getBill(id);
+                if (bill != null) {
+                    removed.add(bill);
+                }
+            }
+            data.deleteBills(removed);
+            for (Bill incoming : changes.changed) {
+                data.updateBill(incoming.getId(), bill -> copyDetails(incoming, bill)); // Gone here: keep it gone
+            }
+            data.addBills(changes.added);
+        });
+        data.requireFullSave();
+        synchronized (this) {
+            reloads++;
+            billsAdded += changes.added.size();
+            billsRemoved += changes.removedIds.size();
+            billsChanged += changes.changed.size();
+        }
+        if (afterChange != null) {
+            afterChange.run();
+        }
+    }
+
+    private static void copyDetails(Bill from, Bill to) {
+        to.setName(from.getName());
+        to.setDateOfPayment(from.getDateOfPayment());
+        to.setAmount(from.getAmount());
+        to.setBankAccount(from.getBankAccount());
+        to.setNotes(from.getNotes());
+        to.setDateStarted(from.getDateStarted());
+        to.setDateChanged(from.getDateChanged());
+        to.setPreviousAmount(from.getPreviousAmount());
+        to.setRecurrence(from.getRecurrence());
+    }
+
+    private Scan scanOrNull() {
+        try {
+            return Scan.read(file);
+        } catch (NoSuchFileException e) {
+            return Scan.EMPTY; // Nothing saved yet
+        } catch (IOException e) {
+            System.out.println("Problem reading bills file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // What an outside change did, by bill id.
+    private static final class Changes {
+        final List<Long> removedIds = new ArrayList<>();
+        final List<Bill> changed = new ArrayList<>();
+        final List<Bill> added = new ArrayList<>();
+
+        boolean isEmpty() {
+            return removedIds.isEmpty() && changed.isEmpty() && added.isEmpty();
+        }
+    }
+
+    /**
+     * Where each bill element is in an XML bills file, with its id and a hash of its bytes.
+     */
+    static final class Scan {
+
+        static final Scan EMPTY = new Scan();
+
+        private int size;
+        private long[] ids = new long[16];
+        private long[] hashes = new long[16];
+        private long[] starts = new long[16];
+        private int[] lengths = new int[16];
+        private int[] slots; // Open addressing table of index + 1 by id, built when first needed
+
+        /**
+         * Read the file's bill elements as bytes, hashing each.
+         * @throws IOException if the file cannot be read or ends before its root element
+         *                     does, as when it is part way through being written.
+         */
+        static Scan read(Path file) throws IOException {
+            Scan scan = new Scan();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] tag = new byte[16];
+            int tagLength = -1;    // -1 when not inside a tag
+            long tagStart = 0;
+            long billStart = -1;   // Offset of the open bill element, -1 when outside one
+            long hash = 0;
+            long id = 0;
+            boolean inId = false;
+            boolean rootClosed = false;
+            long position = 0;
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    for (int i = 0; i < read; i++, position++) {
+                        byte b = buffer[i];
+                        if (billStart >= 0) {
+                            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                        }
+                        if (b == '<') {
+                            tagLength = 0;
+                            tagStart = position;
+                            inId = false;
+                        } else if (tagLength >= 0) {
+                            if (b == '>') {
+                                if (matches(tag, tagLength, "bill")) {
+                                    billStart = tagStart;
+                                    hash = hashOf(FNV_OFFSET, "<bill>");
+                                    id = 0;
+                                } else if (matches(tag, tagLength, "/bill") && billStart >= 0) {
+                                    scan.add(id, hash, billStart, (int) (position + 1 - billStart));
+                                    billStart = -1;
+                                } else if (matches(tag, tagLength, "id") && billStart >= 0) {
+                                    inId = true;
+                                } else if (matches(tag, tagLength, "/contacts")) {
+                                    rootClosed = true;
+                                }
+                                tagLength = -1;
+                            } else if (tagLength < tag.length) {
+                                tag[tagLength++] = b;
+                            } else {
+                                tagLength = -1;
+                            }
+                        } else if (inId && b >= '0' && b <= '9') {
+                            id = id * 10 + (b - '0');
+                        }
+                    }
+                }
+            }
+            if (!rootClosed || billStart >= 0) {
+                throw new IOException("Bills file " + file + " is incomplete");
+            }
+            return scan;
+        }
+
+        private void add(long id, long hash, long start, int length) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            ids[size] = id;
+            hashes[size] = hash;
+            starts[size] = start;
+            lengths[size] = length;
+            size++;
+        }
+
+        // Index of the first element with the id, or -1.
+        int indexOf(long id) {
+            if (slots == null) {
+                int capacity = Integer.highestOneBit(Math.max(16, size * 2) - 1) << 1;
+                slots = new int[capacity];
+                for (int i = 0; i < size; i++) {
+                    if (ids[i] > 0) {
+                        int slot = slotOf(ids[i], capacity - 1);
+                        while (slots[slot] != 0 && ids[slots[slot] - 1] != ids[i]) {
+                            slot = (slot + 1) & (capacity - 1);
+                        }
+                        if (slots[slot] == 0) {
+                            slots[slot] = i + 1;
+                        }
+                    }
+                }
+            }
+            int mask = slots.length - 1;
+            for (int slot = slotOf(id, mask); slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (ids[slots[slot] - 1] == id) {
+                    return slots[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        // How many elements without an id have each hash.
+        Map<Long, Integer> unnumberedHashes() {
+            Map<Long, Integer> counts = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (ids[i] <= 0) {
+                    counts.merge(hashes[i], 1, Integer::sum);
+                }
+            }
+            return counts;
+        }
+
+        private static int slotOf(long id, int mask) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+
+        private static boolean matches(byte[] tag, int length, String name) {
+            if (length != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (tag[i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long hashOf(long hash, String text) {
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+            }
+            return hash;
+        }
+    }
+}
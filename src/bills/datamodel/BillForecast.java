@@ -0,0 +1,216 @@
+package bills.datamodel;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * class BillForecast projects bills forward to the dates they will fall due.
+ *
+ * occurrences() produces future due dates lazily as a stream, one at a time, so a
+ * long horizon never builds a list of every instance. cashFlow() adds the
+ * occurrences up per bank account into day-by-day totals with running (prefix)
+ * sums, so the outgoings between any two dates are found in constant time.
+ *
+ * A repeating bill falls due on its due date and then every one, three or twelve
+ * months after it, counted from the original date so the 31st stays the 31st in
+ * months that have one.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillForecast {
+
+    private BillForecast() {
+    }
+
+    /**
+     * One future payment of a bill.
+     */
+    public static final class Occurrence {
+        private final Bill bill;
+        private final LocalDate date;
+
+        Occurrence(Bill bill, LocalDate date) {
+            this.bill = bill;
+            this.date = date;
+        }
+
+        public Bill getBill() {
+            return bill;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        @Override
+        public String toString() {
+            return bill.getName() + " " + date + " " + bill.getAmount();
+        }
+    }
+
+    /**
+     * @param bill a bill.
+     * @param from first date, inclusive.
+     * @param to last date, inclusive.
+     * @return the bill's due dates between the two dates, generated as the stream is read.
+     */
+    public static Stream<Occurrence> occurrences(Bill bill, LocalDate from, LocalDate to) {
+        LocalDate due = bill.getDateOfPayment();
+        int step = bill.getRecurrence().getMonths();
+        if (due == null || due.isAfter(to)) {
+            return Stream.empty();
+        }
+        if (step == 0) {
+            return due.isBefore(from) ? Stream.empty() : Stream.of(new Occurrence(bill, due));
+        }
+        long first = firstStep(due, step, from);
+        return Stream.iterate(first, n -> n + 1)
+                .map(n -> due.plusMonths(n * step))
+                .takeWhile(date -> !date.isAfter(to))
+                .map(date -> new Occurrence(bill, date));
+    }
+
+    /**
+     * @param bills the bills to project.
+     * @param from first date, inclusive.
+     * @param to last date, inclusive.
+     * @return every bill's due dates between the two dates, bill by bill.
+     */
+    public static Stream<Occurrence> occurrences(Collection<Bill> bills, LocalDate from, LocalDate to) {
+        return bills.stream().flatMap(bill -> occurrences(bill, from, to));
+    }
+
+    /**
+     * Add up the bills' payments for every day between two dates, per bank account.
+     * @param bills the bills to project.
+     * @param from first date, inclusive.
+     * @param to last date, inclusive.
+     * @return the cash flow.
+     * @throws IllegalArgumentException if from is after to, or the range is too long for one array of days.
+     */
+    public static CashFlow cashFlow(Collection<Bill> bills, LocalDate from, LocalDate to) {
+        long span = ChronoUnit.DAYS.between(from, to);
+        if (span < 0) {
+            throw new IllegalArgumentException("Cash flow from " + from + " is after " + to);
+        }
+        if (span >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cash flow from " + from + " to " + to + " is too long");
+        }
+        int days = (int) span + 1;
+        long fromDay = from.toEpochDay();
+        Map<String, long[]> daily = new HashMap<>();
+
+        // Walk the due dates directly rather than through occurrences() - no object per payment.
+        for (Bill bill : bills) {
+            LocalDate due = bill.getDateOfPayment();
+            if (due == null || due.isAfter(to)) {
+                continue;
+            }
+            long cents = Math.round(bill.getAmount() * 100);
+            long[] account = daily.computeIfAbsent(bill.getBankAccount(), a -> new long[days]);
+            int step = bill.getRecurrence().getMonths();
+            if (step == 0) {
+                if (!due.isBefore(from)) {
+                    account[(int) (due.toEpochDay() - fromDay)] += cents;
+                }
+                continue;
+            }
+            for (long n = firstStep(due, step, from); ; n++) {
+                LocalDate date = due.plusMonths(n * step);
+                if (date.isAfter(to)) {
+                    break;
+                }
+                account[(int) (date.toEpochDay() - fromDay)] += cents;
+            }
+        }
+        return new CashFlow(from, daily);
+    }
+
+    // Number of steps after the due date of the first occurrence on or after the date.
+    private static long firstStep(LocalDate due, int step, LocalDate from) {
+        if (!due.isBefore(from)) {
+            return 0;
+        }
+        long n = ChronoUnit.MONTHS.between(due, from) / step;
+        while (due.plusMonths(n * step).isBefore(from)) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Day-by-day payments per bank account over a date range, with running totals.
+     */
+    public static final class CashFlow {
+        private final LocalDate from;
+        private final int days;
+        private final Map<String, long[]> daily;
+        private final Map<String, long[]> running; // running[i] = sum of daily[0..i-1]
+
+        CashFlow(LocalDate from, Map<String, long[]> daily) {
+            this.from = from;
+            this.daily = daily;
+            this.running = new HashMap<>();
+            int length = 0;
+            for (Map.Entry<String, long[]> account : daily.entrySet()) {
+                long[] days = account.getValue();
+                long[] sums = new long[days.length + 1];
+                for (int i = 0; i < days.length; i++) {
+                    sums[i + 1] = sums[i] + days[i];
+                }
+                running.put(account.getKey(), sums);
+                length = days.length;
+            }
+            this.days = length;
+        }
+
+        /**
+         * @return the bank accounts with bills in the forecast.
+         */
+        public Set<String> getAccounts() {
+            return daily.keySet();
+        }
+
+        /**
+         * @return pence due from the account on the date.
+         */
+        public long dailyCents(String account, LocalDate date) {
+            long[] days = daily.get(account);
+            int i = index(date);
+            return days == null || i < 0 || i >= days.length ? 0 : days[i];
+        }
+
+        /**
+         * @param account bank account.
+         * @param first first date, inclusive.
+         * @param last last date, inclusive.
+         * @return pence due from the account between the two dates.
+         */
+        public long totalCents(String account, LocalDate first, LocalDate last) {
+            long[] sums = running.get(account);
+            if (sums == null) {
+                return 0;
+            }
+            int start = Math.max(0, index(first));
+            int end = Math.min(days, index(last) + 1);
+            return end <= start ? 0 : sums[end] - sums[start];
+        }
+
+        /**
+         * @return pence due from the account from the start of the forecast up to and including the date.
+         */
+        public long cumulativeCents(String account, LocalDate date) {
+            return totalCents(account, from, date);
+        }
+
+        private int index(LocalDate date) {
+            return (int) (date.toEpochDay() - from.toEpochDay());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package bills.datamodel;
+
+/**
+ * class BillIdIndex finds bills by their id in constant time.
+ *
+ * An open addressing hash table with long keys held in a plain array, so there is no
+ * boxed Long or map entry per bill. Each bill also has a hint of where it was last seen
+ * in the list, which BillData uses to find its index without scanning from the start.
+ * Removal moves later entries of a probe run back rather than leaving tombstones, so
+ * the table stays fast however many bills come and go.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BillIdIndex {
+
+    private static final long FREE = 0; // Ids start at 1
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Bill[] values = new Bill[INITIAL_CAPACITY];
+    private int[] hints = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param id a bill id.
+     * @return the bill with the id, or null if none.
+     */
+    Bill get(long id) {
+        int slot = find(id);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /**
+     * @param id a bill id.
+     * @return the list index the bill was last known to be at, or -1 if the id is not indexed.
+     */
+    int positionHint(long id) {
+        int slot = find(id);
+        return slot < 0 ? -1 : hints[slot];
+    }
+
+    /**
+     * Add the bill under its id, or replace whatever bill had that id.
+     * @param bill a bill with an id.
+     * @param position where the bill is in the list.
+     */
+    void put(Bill bill, int position) {
+        if ((size + 1) * 2 > keys.length) { // Keep at most half full so probe runs stay short
+            grow();
+        }
+        long id = bill.getId();
+        int mask = keys.length - 1;
+        int slot = slotOf(id, mask);
+        while (keys[slot] != FREE && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == FREE) {
+            keys[slot] = id;
+            size++;
+        }
+        values[slot] = bill;
+        hints[slot] = position;
+    }
+
+    void setPositionHint(long id, int position) {
+        int slot = find(id);
+        if (slot >= 0) {
+            hints[slot] = position;
+        }
+    }
+
+    /**
+     * @param id a bill id.
+     * @return the bill removed, or null if the id was not indexed.
+     */
+    Bill remove(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return null;
+        }
+        Bill removed = values[slot];
+        int mask = keys.length - 1;
+        // Move back any later entry of the run that would no longer be reachable past the gap.
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slotOf(keys[next], mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                hints[gap] = hints[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int find(long id) {
+        if (id == FREE) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int slot = slotOf(id, mask);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Bill[] oldValues = values;
+        int[] oldHints = hints;
+        int capacity = keys.length * 2;
+        keys = new long[capacity];
+        values = new Bill[capacity];
+        hints = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hints[slot] = oldHints[i];
+            }
+        }
+    }
+
+    // Ids are handed out in sequence, so spread them over the table before masking.
+    private static int slotOf(long id, int mask) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,326 @@
+package bills.datamodel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class BillJournal is an append-only log of changes made to the bills list
+ * since the last full save of the bills file.
+ *
+ * Each line is one change: sequence number, operation, the bill's id, for
+ * adds and updates the bill's fields, and an end marker, separated by tabs. On load the changes
+ * after the snapshot's sequence number are replayed over the snapshot. Records name bills by
+ * id rather than list position, as the list is reordered without being saved when the
+ * table is sorted.
+ *
+ * Bill ids are drawn from the same counter as the sequence numbers. The counter is saved
+ * with every snapshot, so ids keep increasing across restarts whatever the file format.
+ * Storage with no file to keep a journal beside gets a journal with no file, which only
+ * keeps the counter.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BillJournal {
+
+    // Records written before they named bills by id used A, U and D with list positions
+    private static final char ADD = 'N';
+    private static final char UPDATE = 'E';
+    private static final char DELETE = 'R';
+    private static final int BILL_FIELDS = 13; // Fields in an add or update record
+    private static final String SEPARATOR = "\t";
+    private static final String NO_DATE = "-";
+    private static final String END = "."; // Last field of every record, missing if the write was cut short
+
+    private final Path file; // Null when there is no journal file
+    private final List<String> pending = new ArrayList<>(); // Records not yet written to file
+    private long lastSeq;     // Sequence number of the most recent change
+    private int recordCount;  // Records handed out for the file since it was last compacted
+
+    BillJournal(Path file) {
+        this.file = file;
+    }
+
+    Path getPath() {
+        return file;
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Take the next number from the counter, as the id for a new bill.
+     * @return a number greater than any sequence number or id handed out before.
+     */
+    long nextId() {
+        return ++lastSeq;
+    }
+
+    /**
+     * Make sure the counter is past an id already in use, such as one read from a file.
+     * @param id a bill's id.
+     */
+    void reserveId(long id) {
+        lastSeq = Math.max(lastSeq, id);
+    }
+
+    void recordAdd(Bill bill) {
+        pending.add(record(ADD, bill));
+    }
+
+    void recordUpdate(Bill bill) {
+        pending.add(record(UPDATE, bill));
+    }
+
+    void recordDelete(Bill bill) {
+        pending.add(++lastSeq + SEPARATOR + DELETE + SEPARATOR + bill.getId() + SEPARATOR + END);
+    }
+
+    /**
+     * Hand over the records made since the last call, for appending to the file.
+     * @return the pending records in the order they were made.
+     */
+    List<String> takePending() {
+        List<String> records = new ArrayList<>(pending);
+        recordCount += pending.size();
+        pending.clear();
+        return records;
+    }
+
+    /**
+     * Drop the pending records and restart the count once a full save includes them all.
+     */
+    void compacted() {
+        pending.clear();
+        recordCount = 0;
+    }
+
+    /**
+     * Append records to the end of the journal file. Only touches the file, so may be
+     * called from a background writer while further changes are being recorded.
+     * @param records records from takePending().
+     * @throws IOException if the journal cannot be written.
+     */
+    void append(List<String> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE),
+                StandardCharsets.UTF_8))) {
+            for (String record : records) {
+                writer.write(record);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Delete the journal file once its changes are part of a saved snapshot.
+     * @throws IOException if the journal file cannot be deleted.
+     */
+    void deleteFile() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Move the journal file aside, to the same name ending .bad, when it cannot be
+     * replayed, so the next full save does not delete the changes it holds.
+     * @return where the journal was moved to.
+     * @throws IOException if the journal cannot be moved.
+     */
+    Path setAside() throws IOException {
+        Path aside = file.resolveSibling(file.getFileName() + ".bad");
+        Files.move(file, aside, StandardCopyOption.REPLACE_EXISTING);
+        return aside;
+    }
+
+    /**
+     * Apply the journal's changes to a freshly loaded list of bills. Bills added are put
+     * at the end of the list and edited bills keep their place.
+     * A partly written last line, left by a crash during an append, ends the replay.
+     *
+     * @param bills the bills read from the snapshot, left as they were if the journal is bad.
+     * @param snapshotSeq sequence number the snapshot was saved at, older records are skipped.
+     * @throws IOException if the journal cannot be read, or holds a record that cannot be
+     *         read or does not fit the bills, such as an edit to a bill that is not there.
+     */
+    void replay(List<Bill> bills, long snapshotSeq) throws IOException {
+        long seqBefore = lastSeq;
+        lastSeq = snapshotSeq;
+        recordCount = 0;
+        if (file == null) {
+            return;
+        }
+        Map<Long, Bill> byId = null; // Made on the first change to replay, in list order
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.split(SEPARATOR, -1);
+                if (!END.equals(fields[fields.length - 1])) {
+                    break;
+                }
+                if (fields.length < 4 || fields[1].length() != 1) {
+                    throw badRecord(lineNumber, "has too few fields");
+                }
+                long seq;
+                long id;
+                try {
+                    seq = Long.parseLong(fields[0]);
+                    id = Long.parseLong(fields[2]);
+                } catch (NumberFormatException e) {
+                    throw badRecord(lineNumber, "has no sequence number or id");
+                }
+                recordCount++;
+                if (seq <= lastSeq) { // Already folded into the snapshot
+                    continue;
+                }
+                if (byId == null) {
+                    byId = new LinkedHashMap<>();
+                    for (Bill bill : bills) {
+                        byId.put(bill.getId(), bill);
+                    }
+                }
+                char op = fields[1].charAt(0);
+                if (op == DELETE) {
+                    if (byId.remove(id) == null) {
+                        throw badRecord(lineNumber, "deletes bill " + id + " which is not there");
+                    }
+                } else if (op == ADD || op == UPDATE) {
+                    Bill bill = parseBill(id, fields);
+                    if (bill == null) {
+                        throw badRecord(lineNumber, "has a bill that cannot be read");
+                    }
+                    if ((op == ADD) == byId.containsKey(id)) {
+                        throw badRecord(lineNumber, (op == ADD ? "adds bill " : "edits bill ") + id
+                                + (op == ADD ? " which is already there" : " which is not there"));
+                    }
+                    byId.put(id, bill); // An edited bill keeps its place
+                } else {
+                    throw badRecord(lineNumber, "has unknown operation " + op);
+                }
+                lastSeq = seq;
+            }
+        } catch (NoSuchFileException e) {
+            // No changes since the last snapshot.
+        } catch (IOException e) {
+            lastSeq = Math.max(seqBefore, snapshotSeq);
+            throw e;
+        }
+        if (byId != null) {
+            bills.clear();
+            bills.addAll(byId.values());
+        }
+    }
+
+    private IOException badRecord(int lineNumber, String problem) {
+        return new IOException("Bills journal " + file + " line " + lineNumber + " " + problem);
+    }
+
+    private String record(char op, Bill bill) {
+        return ++lastSeq + SEPARATOR + op + SEPARATOR + bill.getId()
+                + SEPARATOR + escape(bill.getName())
+                + SEPARATOR + formatDate(bill.getDateOfPayment())
+                + SEPARATOR + bill.getAmount()
+                + SEPARATOR + escape(bill.getBankAccount())
+                + SEPARATOR + escape(bill.getNotes())
+                + SEPARATOR + formatDate(bill.getDateStarted())
+                + SEPARATOR + formatDate(bill.getDateChanged())
+                + SEPARATOR + bill.getPreviousAmount()
+                + SEPARATOR + bill.getRecurrence().name()
+                + SEPARATOR + END;
+    }
+
+    private static Bill parseBill(long id, String[] fields) {
+        if (fields.length != BILL_FIELDS) {
+            return null;
+        }
+        try {
+            Bill bill = new Bill(BillStrings.intern(unescape(fields[3])), parseDate(fields[4]), Double.parseDouble(fields[5]),
+                    BillStrings.intern(unescape(fields[6])), BillStrings.intern(unescape(fields[7])),
+                    parseDate(fields[8]), parseDate(fields[9]),
+                    Double.parseDouble(fields[10]));
+            bill.setRecurrence(Recurrence.valueOf(fields[11]));
+            bill.setId(id);
+            return bill;
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static String formatDate(LocalDate date) {
+        return date == null ? NO_DATE : Long.toString(date.toEpochDay());
+    }
+
+    private static LocalDate parseDate(String text) {
+        return NO_DATE.equals(text) ? null : LocalDate.ofEpochDay(Long.parseLong(text));
+    }
+
+    // Tabs and line breaks are the record delimiters so they are escaped inside text fields.
+    private static String escape(String text) {
+        if (text == null) {
+            return "\\0";
+        }
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String text) {
+        if ("\\0".equals(text)) {
+            return null;
+        }
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                switch (next) {
+                    case 't': unescaped.append('\t'); break;
+                    case 'n': unescaped.append('\n'); break;
+                    case 'r': unescaped.append('\r'); break;
+                    default: unescaped.append(next);
+                }
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package bills.datamodel;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class BillList is the observable list BillData keeps its bills in.
+ *
+ * Changes made between beginBatch() and endBatch() reach the listeners as one change
+ * when the outermost batch ends. Adding, removing and replacing many bills at once
+ * moves the backing array once rather than once per bill, and a setAll() that only
+ * reorders the bills, as sorting the table does, is reported as a permutation so the
+ * listeners need not rebuild from scratch.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BillList extends ModifiableObservableListBase<Bill> {
+
+    private final ArrayList<Bill> bills = new ArrayList<>();
+
+    /**
+     * Hold back change notifications until the matching endBatch(). Batches may nest.
+     */
+    void beginBatch() {
+        beginChange();
+    }
+
+    /**
+     * Send the changes made since the outermost beginBatch() as one change.
+     */
+    void endBatch() {
+        endChange();
+    }
+
+    @Override
+    public Bill get(int index) {
+        return bills.get(index);
+    }
+
+    @Override
+    public int size() {
+        return bills.size();
+    }
+
+    @Override
+    protected void doAdd(int index, Bill bill) {
+        bills.add(index, bill);
+    }
+
+    @Override
+    protected Bill doSet(int index, Bill bill) {
+        return bills.set(index, bill);
+    }
+
+    @Override
+    protected Bill doRemove(int index) {
+        return bills.remove(index);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Bill> added) {
+        return addAll(bills.size(), added);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Bill> added) {
+        if (index < 0 || index > bills.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bills.size());
+        }
+        if (added.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        try {
+            bills.addAll(index, added);
+            nextAdd(index, index + added.size());
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        List<Bill> range = bills.subList(from, to);
+        beginChange();
+        try {
+            nextRemove(from, new ArrayList<>(range));
+            range.clear();
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Remove every bill the collection contains in one pass. For a large list pass a set,
+     * as contains() is called once per bill.
+     */
+    @Override
+    public boolean removeAll(Collection<?> removed) {
+        return removeMatching(removed, true);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> retained) {
+        return removeMatching(retained, false);
+    }
+
+    private boolean removeMatching(Collection<?> collection, boolean contained) {
+        int size = bills.size();
+        boolean[] remove = new boolean[size];
+        int first = -1;
+        for (int i = 0; i < size; i++) {
+            if (collection.contains(bills.get(i)) == contained) {
+                remove[i] = true;
+                if (first < 0) {
+                    first = i;
+                }
+            }
+        }
+        if (first < 0) {
+            return false;
+        }
+
+        beginChange();
+        try {
+            // Report each run of removed bills where it starts once the runs before it are gone,
+            // then close up the array once.
+            int removedBefore = 0;
+            int start = first;
+            while (start < size) {
+                int end = start + 1;
+                while (end < size && remove[end]) {
+                    end++;
+                }
+                nextRemove(start - removedBefore, new ArrayList<>(bills.subList(start, end)));
+                removedBefore += end - start;
+                start = end;
+                while (start < size && !remove[start]) {
+                    start++;
+                }
+            }
+            int kept = first;
+            for (int i = first; i < size; i++) {
+                if (!remove[i]) {
+                    bills.set(kept++, bills.get(i));
+                }
+            }
+            bills.subList(kept, size).clear();
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    /**
+     * Replace the contents. When the new contents are the same bills in another order
+     * the change is a permutation, otherwise a replacement of the whole list.
+     */
+    @Override
+    public boolean setAll(Collection<? extends Bill> replacement) {
+        List<Bill> incoming = new ArrayList<>(replacement); // The replacement may be a view of this list
+        int[] permutation = permutationTo(incoming);
+        beginChange();
+        try {
+            List<Bill> old = new ArrayList<>(bills);
+            bills.clear();
+            bills.addAll(incoming);
+            if (permutation != null) {
+                if (permutation.length > 0) {
+                    nextPermutation(0, permutation.length, permutation);
+                }
+            } else if (old.isEmpty()) {
+                if (!bills.isEmpty()) {
+                    nextAdd(0, bills.size());
+                }
+            } else {
+                nextReplace(0, bills.size(), old);
+            }
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    // Where each bill now in the list is in the replacement, or null if the replacement
+    // holds other bills.
+    private int[] permutationTo(List<Bill> replacement) {
+        int size = bills.size();
+        if (replacement.size() != size) {
+            return null;
+        }
+        // First place of each bill in the replacement, then later places of the same bill chained
+        Map<Bill, Integer> firstIndex = new IdentityHashMap<>(size);
+        int[] nextIndex = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            Integer later = firstIndex.put(replacement.get(i), i);
+            nextIndex[i] = later == null ? -1 : later;
+        }
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            Bill bill = bills.get(i);
+            Integer at = firstIndex.get(bill);
+            if (at == null || at < 0) {
+                return null;
+            }
+            permutation[i] = at;
+            firstIndex.put(bill, nextIndex[at]);
+        }
+        return permutation;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return bills.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] array) {
+        return bills.toArray(array);
+    }
+}
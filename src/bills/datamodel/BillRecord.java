@@ -0,0 +1,105 @@
+package bills.datamodel;
+
+import java.time.LocalDate;
+
+/**
+ * class BillRecord is an unchangeable copy of a bill's details.
+ *
+ * A Bill is made of JavaFX properties and belongs to the thread that changes the bills
+ * list. A BillRecord has plain final fields, so it can be handed to any thread, and is
+ * about a tenth of the size.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public final class BillRecord {
+
+    private final long id;
+    private final String name;
+    private final LocalDate dateOfPayment;
+    private final double amount;
+    private final String bankAccount;
+    private final String notes;
+    private final LocalDate dateStarted;
+    private final LocalDate dateChanged;
+    private final double previousAmount;
+    private final Recurrence recurrence;
+
+    /**
+     * Copy a bill's details. Must be called on the thread that changes the bill.
+     * @param bill the bill to copy.
+     */
+    public BillRecord(Bill bill) {
+        id = bill.getId();
+        name = bill.getName();
+        dateOfPayment = bill.getDateOfPayment();
+        amount = bill.getAmount();
+        bankAccount = bill.getBankAccount();
+        notes = bill.getNotes();
+        dateStarted = bill.getDateStarted();
+        dateChanged = bill.getDateChanged();
+        previousAmount = bill.getPreviousAmount();
+        recurrence = bill.getRecurrence();
+    }
+
+    /**
+     * @return a new Bill with these details and id, for example to save or to edit and submit back.
+     */
+    public Bill toBill() {
+        Bill bill = new Bill(name, dateOfPayment, amount, bankAccount, notes, dateStarted, dateChanged, previousAmount);
+        bill.setRecurrence(recurrence);
+        bill.setId(id);
+        return bill;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocalDate getDateOfPayment() {
+        return dateOfPayment;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getBankAccount() {
+        return bankAccount;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    public LocalDate getDateStarted() {
+        return dateStarted;
+    }
+
+    public LocalDate getDateChanged() {
+        return dateChanged;
+    }
+
+    public double getPreviousAmount() {
+        return previousAmount;
+    }
+
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    @Override
+    public String toString() {
+        return "BillRecord{" +
+                "id=" + id +
+                ", name=" + name +
+                ", dateOfPayment=" + dateOfPayment +
+                ", amount=" + amount +
+                ", bankAccount=" + bankAccount +
+                '}';
+    }
+}
@@ -0,0 +1,145 @@
+package bills.datamodel;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * class BillRecords keeps a BillRecord copy of each bill in list order, from which
+ * snapshots are taken for other threads.
+ *
+ * The copies follow the observable bills list, and bills edited through BillData are
+ * copied again. Only the copies are shared: they are changed under this object's lock on
+ * the thread that owns the bills list, and a snapshot copies the array of them under the
+ * same lock, once per change however many threads ask for it.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class BillRecords {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ListChangeListener<Bill> listListener = this::listChanged;
+    private final Set<Bill> updated = Collections.newSetFromMap(new IdentityHashMap<>()); // Not yet copied again
+
+    // Guarded by this
+    private BillRecord[] records;
+    private long[] ids; // Id of each record, kept alongside for snapshots to search
+    private int size;
+    private long totalCents;
+    private long version;
+    private BillSnapshot snapshot; // Last snapshot taken, null once anything has changed since
+
+    BillRecords(ObservableList<Bill> bills) {
+        records = new BillRecord[Math.max(INITIAL_CAPACITY, bills.size())];
+        ids = new long[records.length];
+        synchronized (this) {
+            insert(0, bills);
+        }
+        bills.addListener(listListener);
+    }
+
+    /**
+     * @return the records as they are now. Any thread.
+     */
+    synchronized BillSnapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new BillSnapshot(Arrays.copyOf(records, size), Arrays.copyOf(ids, size), version, totalCents);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Note that a bill's details were edited, to be copied by copyUpdated().
+     * @param bill the edited bill.
+     */
+    void updated(Bill bill) {
+        updated.add(bill);
+    }
+
+    /**
+     * Copy again the bills edited since the last call.
+     * @param indexOf where a bill is in the list, -1 if it has since been removed.
+     */
+    void copyUpdated(ToIntFunction<Bill> indexOf) {
+        if (updated.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Bill bill : updated) {
+                int index = indexOf.applyAsInt(bill);
+                if (index >= 0) {
+                    totalCents -= toCents(records[index]);
+                    records[index] = new BillRecord(bill);
+                    ids[index] = bill.getId();
+                    totalCents += toCents(records[index]);
+                }
+            }
+            changed();
+        }
+        updated.clear();
+    }
+
+    private synchronized void listChanged(ListChangeListener.Change<? extends Bill> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                BillRecord[] old = Arrays.copyOfRange(records, change.getFrom(), change.getTo());
+                long[] oldIds = Arrays.copyOfRange(ids, change.getFrom(), change.getTo());
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    records[change.getPermutation(i)] = old[i - change.getFrom()];
+                    ids[change.getPermutation(i)] = oldIds[i - change.getFrom()];
+                }
+            } else {
+                if (change.wasRemoved()) {
+                    remove(change.getFrom(), change.getRemovedSize());
+                }
+                if (change.wasAdded()) {
+                    insert(change.getFrom(), change.getAddedSubList());
+                }
+            }
+        }
+        changed();
+    }
+
+    private void insert(int at, List<? extends Bill> added) {
+        int count = added.size();
+        if (size + count > records.length) {
+            records = Arrays.copyOf(records, Math.max(size + count, records.length + (records.length >> 1)));
+            ids = Arrays.copyOf(ids, records.length);
+        }
+        System.arraycopy(records, at, records, at + count, size - at);
+        System.arraycopy(ids, at, ids, at + count, size - at);
+        size += count;
+        for (Bill bill : added) {
+            records[at] = new BillRecord(bill);
+            ids[at] = bill.getId();
+            totalCents += toCents(records[at++]);
+        }
+    }
+
+    private void remove(int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            totalCents -= toCents(records[i]);
+        }
+        System.arraycopy(records, from + count, records, from, size - from - count);
+        System.arraycopy(ids, from + count, ids, from, size - from - count);
+        Arrays.fill(records, size - count, size, null);
+        size -= count;
+    }
+
+    private void changed() {
+        version++;
+        snapshot = null;
+    }
+
+    private static long toCents(BillRecord record) {
+        return Math.round(record.getAmount() * 100);
+    }
+}
@@ -0,0 +1,152 @@
+package bills.datamodel;
+
+/**
+ * class BillSaver saves a BillData in the background so the UI thread never waits on file I/O.
+ *
+ * requestSave() captures the changes on the calling thread and hands them to a single
+ * writer thread. Requests made while a save is already waiting are merged into it, so a
+ * burst of edits costs one write.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillSaver {
+
+    private final BillData data;
+    private final Thread writer;
+
+    // Guarded by this
+    private PendingSave queued;   // Next save to write, null when there is nothing to do
+    private boolean writing;      // True while the writer thread is writing a save
+    private boolean closed;
+
+    // Metrics, guarded by this
+    private long queuedSaves;     // Requests made
+    private long coalescedSaves;  // Requests merged into a save already waiting
+    private long completedSaves;  // Writes finished
+    private long totalLatency;    // Nanoseconds from first request to finished write, summed
+    private long maxLatency;
+
+    public BillSaver(BillData data) {
+        this.data = data;
+        writer = new Thread(this::writeLoop, "bill-saver");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a save of the current changes. Must be called on the thread that changes the bills.
+     */
+    public void requestSave() {
+        PendingSave save = data.prepareSave();
+        synchronized (this) {
+            if (closed) {
+                data.writeSave(save); // Writer has stopped, save in place rather than lose it.
+                return;
+            }
+            queuedSaves++;
+            if (queued == null) {
+                queued = save;
+                notifyAll();
+            } else {
+                queued.merge(save);
+                coalescedSaves++;
+            }
+        }
+    }
+
+    /**
+     * Wait until every requested save has been written.
+     */
+    public synchronized void flush() {
+        boolean interrupted = false;
+        while (queued != null || writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write any outstanding saves and stop the writer thread. Call on exit.
+     */
+    public void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            PendingSave save;
+            synchronized (this) {
+                while (queued == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queued == null) { // Closed with nothing left to write.
+                    return;
+                }
+                save = queued;
+                queued = null;
+                writing = true;
+            }
+
+            try {
+                data.writeSave(save);
+            } catch (RuntimeException e) {
+                // Keep the thread for later saves rather than leave flush() and close() waiting.
+                System.out.println("Problem saving bills: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                long latency = System.nanoTime() - save.getRequestedAt();
+                synchronized (this) {
+                    writing = false;
+                    completedSaves++;
+                    totalLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    public synchronized long getQueuedSaves() {
+        return queuedSaves;
+    }
+
+    public synchronized long getCoalescedSaves() {
+        return coalescedSaves;
+    }
+
+    public synchronized long getCompletedSaves() {
+        return completedSaves;
+    }
+
+    /**
+     * @return mean time in milliseconds from a save being requested to it being written.
+     */
+    public synchronized double getAverageLatencyMillis() {
+        return completedSaves == 0 ? 0.0 : totalLatency / 1e6 / completedSaves;
+    }
+
+    public synchronized double getMaxLatencyMillis() {
+        return maxLatency / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BillSaver{queued=%d, coalesced=%d, completed=%d, avgLatency=%.2fms, maxLatency=%.2fms}",
+                queuedSaves, coalescedSaves, completedSaves, getAverageLatencyMillis(), getMaxLatencyMillis());
+    }
+}
@@ -0,0 +1,441 @@
+package bills.datamodel;
+
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * class BillSearchIndex finds bills by the words in their names and notes.
+ *
+ * Each word of a bill's name goes into a prefix trie and each word of its notes into an
+ * inverted index, so a query term finds the bills with a word starting with it without
+ * scanning the bill list. A query matches a bill when every term starts a word of its
+ * name or notes, ignoring case. The index follows the observable bills list and each
+ * bill's name and notes properties.
+ *
+ * For type-ahead use, a Search remembers its last result and, when the next query only
+ * adds to the last one, narrows that result instead of starting again. A Search can be
+ * limited to the first matches, which are found without collecting the rest, so a short
+ * prefix matching a large share of the bills costs no more than a long one.
+ *
+ * buildLater() indexes a copy of the bills' text on a background thread, so a large list
+ * can be indexed without holding up the thread that changes it.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillSearchIndex {
+
+    private final ObservableList<Bill> bills;
+    private final TrieNode names = new TrieNode();
+    private final NavigableMap<String, Set<Bill>> notes = new TreeMap<>();
+    private long modCount; // Changes to the index, so a Search knows its last result is stale
+
+    // One listener shared by every bill - the property's bean is the bill that changed.
+    private final ChangeListener<String> nameListener = this::nameChanged;
+    private final ChangeListener<String> notesListener = this::notesChanged;
+    private final ListChangeListener<Bill> listListener = this::listChanged;
+
+    BillSearchIndex(ObservableList<Bill> bills) {
+        this.bills = bills;
+        for (Bill bill : bills) {
+            added(bill);
+        }
+        bills.addListener(listListener);
+    }
+
+    // Index text copied from the bills, on any thread, without following the list yet.
+    private BillSearchIndex(ObservableList<Bill> bills, Bill[] rows, String[] rowNames, String[] rowNotes) {
+        this.bills = bills;
+        for (int i = 0; i < rows.length; i++) {
+            indexName(rows[i], rowNames[i], true);
+            indexNotes(rows[i], rowNotes[i], true);
+        }
+    }
+
+    /**
+     * Index the bills on a background thread. Their text is copied here, so this must be
+     * called on the thread that changes the bills. Changes made while the index is built
+     * are caught up with before it starts following the list.
+     * @param bills the bills list.
+     * @param background runs the indexing.
+     * @param owner runs tasks on the thread that changes the bills.
+     * @return completes on the owner thread with an index following the list.
+     */
+    static CompletableFuture<BillSearchIndex> buildLater(ObservableList<Bill> bills, Executor background, Executor owner) {
+        Bill[] rows = bills.toArray(new Bill[0]);
+        String[] rowNames = new String[rows.length];
+        String[] rowNotes = new String[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            rowNames[i] = rows[i].getName();
+            rowNotes[i] = rows[i].getNotes();
+        }
+        // Bills added and removed while building, in order; a set bit marks an addition.
+        List<Bill> moved = new ArrayList<>();
+        BitSet addedAt = new BitSet();
+        ListChangeListener<Bill> recorder = change -> {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+                moved.addAll(change.getRemoved());
+                for (Bill bill : change.getAddedSubList()) {
+                    addedAt.set(moved.size());
+                    moved.add(bill);
+                }
+            }
+        };
+        bills.addListener(recorder);
+        return CompletableFuture.supplyAsync(() -> new BillSearchIndex(bills, rows, rowNames, rowNotes), background)
+                .handleAsync((index, failure) -> {
+                    bills.removeListener(recorder);
+                    if (failure != null) {
+                        throw new CompletionException(failure);
+                    }
+                    index.catchUp(rows, rowNames, rowNotes, moved, addedAt);
+                    return index;
+                }, owner);
+    }
+
+    // Bring an index built from copied text up to date with the bills and start following them.
+    private void catchUp(Bill[] rows, String[] rowNames, String[] rowNotes, List<Bill> moved, BitSet addedAt) {
+        for (int i = 0; i < rows.length; i++) {
+            Bill bill = rows[i];
+            if (bill.getName() != rowNames[i]) { // Same String when untouched; an equal copy is only reindexed
+                indexName(bill, rowNames[i], false);
+                indexName(bill, bill.getName(), true);
+            }
+            if (bill.getNotes() != rowNotes[i]) {
+                indexNotes(bill, rowNotes[i], false);
+                indexNotes(bill, bill.getNotes(), true);
+            }
+        }
+        for (int i = 0; i < moved.size(); i++) {
+            Bill bill = moved.get(i);
+            boolean add = addedAt.get(i);
+            indexName(bill, bill.getName(), add);
+            indexNotes(bill, bill.getNotes(), add);
+        }
+        for (Bill bill : bills) {
+            bill.nameProperty().addListener(nameListener);
+            bill.notesProperty().addListener(notesListener);
+        }
+        bills.addListener(listListener);
+    }
+
+    /**
+     * Stop following the bills list.
+     */
+    void detach() {
+        bills.removeListener(listListener);
+        for (Bill bill : bills) {
+            bill.nameProperty().removeListener(nameListener);
+            bill.notesProperty().removeListener(notesListener);
+        }
+    }
+
+    /**
+     * @param query words to look for, separated by spaces or punctuation.
+     * @return bills where every query word starts a word of the name or notes,
+     * in name order; every bill for an empty query.
+     */
+    public List<Bill> find(String query) {
+        List<Bill> found = new ArrayList<>();
+        find(words(query), found, Integer.MAX_VALUE);
+        return found;
+    }
+
+    // Add up to limit matches to found, in the order find() gives. Returns true if there are more.
+    private boolean find(List<String> terms, List<Bill> found, int limit) {
+        if (terms.isEmpty()) {
+            found.addAll(bills.size() <= limit ? bills : bills.subList(0, limit));
+            return bills.size() > limit;
+        }
+
+        // Go through the bills the first term finds, names then notes, and keep those the rest match too.
+        String first = terms.get(0);
+        List<String> rest = terms.subList(1, terms.size());
+        Set<Bill> seen = Collections.newSetFromMap(new IdentityHashMap<>()); // A bill may have several words starting with the term
+        boolean[] more = new boolean[1];
+        Predicate<Bill> take = bill -> {
+            if (!seen.add(bill) || !matches(bill, rest)) {
+                return true;
+            }
+            if (found.size() == limit) {
+                more[0] = true;
+                return false;
+            }
+            found.add(bill);
+            return true;
+        };
+        TrieNode node = names.find(first);
+        if (node != null && !node.forEachUntil(take)) {
+            return more[0];
+        }
+        for (Set<Bill> withWord : notes.subMap(first, true, first + Character.MAX_VALUE, false).values()) {
+            for (Bill bill : withWord) {
+                if (!take.test(bill)) {
+                    return more[0];
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a new type-ahead search over this index, giving every match.
+     */
+    public Search newSearch() {
+        return new Search(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param limit most matches each update() gives.
+     * @return a new type-ahead search over this index, giving the first matches only.
+     */
+    public Search newSearch(int limit) {
+        return new Search(limit);
+    }
+
+    /**
+     * A type-ahead search. Each call to update() is answered from the previous
+     * result when the query only adds characters or words to the previous query.
+     */
+    public class Search {
+
+        private final int limit;
+        private List<String> lastTerms = new ArrayList<>();
+        private List<Bill> lastResult;
+        private boolean lastHadMore; // lastResult stopped at the limit
+        private long lastModCount = -1;
+
+        private Search(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * @param query the search box text.
+         * @return the bills matching it, no more than the search's limit.
+         */
+        public List<Bill> update(String query) {
+            List<String> terms = words(query);
+            boolean current = lastResult != null && lastModCount == modCount;
+            if (current && terms.equals(lastTerms)) {
+                return lastResult; // Only spaces or punctuation typed.
+            }
+            if (current && !lastHadMore && narrows(lastTerms, terms)) {
+                List<Bill> narrowed = new ArrayList<>();
+                for (Bill bill : lastResult) {
+                    if (matches(bill, terms)) {
+                        narrowed.add(bill);
+                    }
+                }
+                lastResult = narrowed;
+            } else {
+                lastResult = new ArrayList<>();
+                lastHadMore = find(terms, lastResult, limit);
+            }
+            lastTerms = terms;
+            lastModCount = modCount;
+            return lastResult;
+        }
+
+        /**
+         * @return true if the last update() stopped at the limit with more bills matching.
+         */
+        public boolean hasMore() {
+            return lastHadMore;
+        }
+    }
+
+    // True when every bill matching the new terms also matched the old ones.
+    private static boolean narrows(List<String> oldTerms, List<String> newTerms) {
+        if (oldTerms.isEmpty() || newTerms.size() < oldTerms.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldTerms.size(); i++) {
+            if (!newTerms.get(i).startsWith(oldTerms.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(Bill bill, List<String> terms) {
+        for (String term : terms) {
+            if (!hasWordStartingWith(bill.getName(), term) && !hasWordStartingWith(bill.getNotes(), term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same test as looking the term up in the index, but on one bill's text and without allocating.
+    private static boolean hasWordStartingWith(String text, String term) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - term.length();
+        for (int i = 0; i <= last; i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+                    && text.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split text into lower case words of letters and digits.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void listChanged(ListChangeListener.Change<? extends Bill> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            for (Bill bill : change.getRemoved()) {
+                bill.nameProperty().removeListener(nameListener);
+                bill.notesProperty().removeListener(notesListener);
+                indexName(bill, bill.getName(), false);
+                indexNotes(bill, bill.getNotes(), false);
+            }
+            for (Bill bill : change.getAddedSubList()) {
+                added(bill);
+            }
+        }
+    }
+
+    private void added(Bill bill) {
+        bill.nameProperty().addListener(nameListener);
+        bill.notesProperty().addListener(notesListener);
+        indexName(bill, bill.getName(), true);
+        indexNotes(bill, bill.getNotes(), true);
+    }
+
+    private void nameChanged(ObservableValue<? extends String> observable, String oldName, String newName) {
+        Bill bill = (Bill) ((ReadOnlyProperty<?>) observable).getBean();
+        indexName(bill, oldName, false);
+        indexName(bill, newName, true);
+    }
+
+    private void notesChanged(ObservableValue<? extends String> observable, String oldNotes, String newNotes) {
+        Bill bill = (Bill) ((ReadOnlyProperty<?>) observable).getBean();
+        indexNotes(bill, oldNotes, false);
+        indexNotes(bill, newNotes, true);
+    }
+
+    private void indexName(Bill bill, String name, boolean add) {
+        for (String word : new HashSet<>(words(name))) {
+            if (add) {
+                names.insert(word, 0).bills.add(bill);
+            } else {
+                names.remove(word, 0, bill);
+            }
+        }
+        modCount++;
+    }
+
+    private void indexNotes(Bill bill, String text, boolean add) {
+        for (String word : new HashSet<>(words(text))) {
+            if (add) {
+                notes.computeIfAbsent(word, w -> new LinkedHashSet<>()).add(bill);
+            } else {
+                Set<Bill> withWord = notes.get(word);
+                if (withWord != null && withWord.remove(bill) && withWord.isEmpty()) {
+                    notes.remove(word);
+                }
+            }
+        }
+        modCount++;
+    }
+
+    /**
+     * A node of the name trie. The bills are those with a name word ending at this node;
+     * the children are kept in character order so collecting a subtree gives name order.
+     */
+    private static final class TrieNode {
+        private final TreeMap<Character, TrieNode> children = new TreeMap<>();
+        private final Set<Bill> bills = new LinkedHashSet<>();
+
+        TrieNode find(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return node;
+        }
+
+        TrieNode insert(String word, int at) {
+            if (at == word.length()) {
+                return this;
+            }
+            return children.computeIfAbsent(word.charAt(at), c -> new TrieNode()).insert(word, at + 1);
+        }
+
+        // Remove the bill from the word's node, pruning nodes left empty. Returns true if this node is now empty.
+        boolean remove(String word, int at, Bill bill) {
+            if (at == word.length()) {
+                bills.remove(bill);
+            } else {
+                TrieNode child = children.get(word.charAt(at));
+                if (child != null && child.remove(word, at + 1, bill)) {
+                    children.remove(word.charAt(at));
+                }
+            }
+            return bills.isEmpty() && children.isEmpty();
+        }
+
+        // Give the bills of this subtree to action in word order until it returns false. Returns false if stopped.
+        boolean forEachUntil(Predicate<Bill> action) {
+            for (Bill bill : bills) {
+                if (!action.test(bill)) {
+                    return false;
+                }
+            }
+            for (Map.Entry<Character, TrieNode> child : children.entrySet()) {
+                if (!child.getValue().forEachUntil(action)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
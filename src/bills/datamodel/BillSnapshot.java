@@ -0,0 +1,210 @@
+package bills.datamodel;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * class BillSnapshot is the bills as they were at one moment, for reading on any thread.
+ *
+ * Nothing in a snapshot changes, so it can be read without locking while the bills
+ * list goes on changing. Taken with BillData.snapshot().
+ *
+ * Looking bills up by id, and by due date, scans the bills at first. A snapshot that is
+ * asked more often than it costs to index - as when reads outnumber changes - builds a
+ * hash table of ids, or a copy of the bills sorted by due date, once, on whichever thread
+ * asks next. One taken between every change is never indexed and costs no more than before.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public final class BillSnapshot {
+
+    // Scans of all the bills each index costs to build, as measured at 100,000 bills, so a
+    // snapshot never spends much more than an index costs on scanning without one.
+    private static final int ID_SCANS_BEFORE_INDEXING = 24;
+    private static final int DUE_SCANS_BEFORE_INDEXING = 8;
+
+    private final List<BillRecord> bills;
+    private final long[] ids; // ids[i] is the id of bill i
+    private final long version;
+    private final long totalCents;
+    private volatile int[] idSlots;  // Open addressing on ids, each slot a bill's index + 1, 0 when empty
+    private volatile long[] byDue;   // Due epoch day << 32 | index of each bill with a due date, sorted
+    // Lookups answered by scanning. Updated without locking, so only roughly counted.
+    private int idScans;
+    private int dueScans;
+    BillSnapshot(BillRecord[] records, long[] ids, long version, long totalCents) {
+        this.bills = new RecordList(records);
+        this.ids = ids;
+        this.version = version;
+        this.totalCents = totalCents;
+    }
+
+    /**
+     * @return the bills in list order, as a list that cannot be changed.
+     */
+    public List<BillRecord> getBills() {
+        return bills;
+    }
+
+    /**
+     * @param id a bill's id.
+     * @return the bill with the id, or null if there was none.
+     */
+    public BillRecord getBill(long id) {
+        int[] slots = idSlots;
+        if (slots == null) {
+            if (idScans++ < ID_SCANS_BEFORE_INDEXING) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == id) {
+                        return bills.get(i);
+                    }
+                }
+                return null;
+            }
+            slots = idSlots = hashIds(ids);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash(id) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (ids[slots[slot] - 1] == id) {
+                return bills.get(slots[slot] - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param from first due date, inclusive, or null for no limit.
+     * @param to last due date, inclusive, or null for no limit.
+     * @return the bills due between the dates, in list order. Bills with no due date are
+     *         only included when neither date is given.
+     */
+    public List<BillRecord> dueBetween(LocalDate from, LocalDate to) {
+        if (from == null && to == null) {
+            return bills;
+        }
+        long[] sorted = byDue;
+        if (sorted == null) {
+            if (dueScans++ < DUE_SCANS_BEFORE_INDEXING) {
+                return scanDueBetween(from, to);
+            }
+            sorted = byDue = sortByDue(bills);
+        }
+        int start = from == null ? 0 : firstAtOrAfter(sorted, from.toEpochDay() << 32);
+        int end = to == null ? sorted.length : firstAtOrAfter(sorted, (to.toEpochDay() + 1) << 32);
+        if (start >= end) {
+            return List.of();
+        }
+        int[] indexes = new int[end - start];
+        for (int i = start; i < end; i++) {
+            indexes[i - start] = (int) sorted[i];
+        }
+        Arrays.sort(indexes); // Back into list order
+        BillRecord[] due = new BillRecord[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            due[i] = bills.get(indexes[i]);
+        }
+        return new RecordList(due);
+    }
+
+    public int size() {
+        return bills.size();
+    }
+
+    /**
+     * @return number of changes made to the bills before this snapshot, so a later
+     *         snapshot of the same BillData has a higher version if anything changed.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return total of the bills' amounts in pence.
+     */
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    private List<BillRecord> scanDueBetween(LocalDate from, LocalDate to) {
+        List<BillRecord> due = new ArrayList<>();
+        for (BillRecord bill : bills) {
+            LocalDate date = bill.getDateOfPayment();
+            if (date != null && (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))) {
+                due.add(bill);
+            }
+        }
+        return Collections.unmodifiableList(due);
+    }
+
+    private static int[] hashIds(long[] ids) {
+        int[] slots = new int[Integer.highestOneBit(Math.max(1, ids.length) * 2) * 2]; // At most half full
+        int mask = slots.length - 1;
+        for (int i = 0; i < ids.length; i++) {
+            int slot = hash(ids[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        return slots;
+    }
+
+    private static int hash(long id) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static long[] sortByDue(List<BillRecord> bills) {
+        long[] keys = new long[bills.size()];
+        int count = 0;
+        for (int i = 0; i < bills.size(); i++) {
+            LocalDate due = bills.get(i).getDateOfPayment();
+            if (due != null) {
+                keys[count++] = due.toEpochDay() << 32 | i;
+            }
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    // Index of the first key not less than the given one.
+    private static int firstAtOrAfter(long[] sorted, long key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Read only view of the array the snapshot was taken into.
+    private static final class RecordList extends AbstractList<BillRecord> implements RandomAccess {
+        private final BillRecord[] records;
+
+        RecordList(BillRecord[] records) {
+            this.records = records;
+        }
+
+        @Override
+        public BillRecord get(int index) {
+            return records[index];
+        }
+
+        @Override
+        public int size() {
+            return records.length;
+        }
+    }
+}
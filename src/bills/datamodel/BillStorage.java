@@ -0,0 +1,55 @@
+package bills.datamodel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * interface BillStorage - a file format BillData can keep its bills in.
+ *
+ * A storage holds a complete snapshot of the bills together with the journal
+ * sequence number the snapshot includes, see BillJournal.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public interface BillStorage {
+
+    /**
+     * @return the file the bills are stored in, or null if they are not kept in a local
+     *         file, as in an in-memory or server database.
+     */
+    Path getPath();
+
+    /**
+     * Read the stored bills.
+     * @param bills list the bills are added to, in stored order.
+     * @return the journal sequence number the stored bills include.
+     * @throws IOException if the file cannot be read or is not in this format.
+     */
+    long load(List<Bill> bills) throws IOException;
+
+    /**
+     * Read the stored bills one at a time without keeping them, so files larger than
+     * memory can be processed. Formats that cannot stream load the whole list first.
+     * @param action called with each bill, in stored order.
+     * @return the journal sequence number the stored bills include.
+     * @throws IOException if the file cannot be read or is not in this format.
+     */
+    default long forEach(Consumer<? super Bill> action) throws IOException {
+        List<Bill> bills = new ArrayList<>();
+        long seq = load(bills);
+        bills.forEach(action);
+        return seq;
+    }
+
+    /**
+     * Replace the stored bills. The previous file is left intact if writing fails.
+     * @param bills the bills to store.
+     * @param seq the journal sequence number the bills include.
+     * @throws IOException if the file cannot be written.
+     */
+    void save(List<Bill> bills, long seq) throws IOException;
+}
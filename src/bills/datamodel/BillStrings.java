@@ -0,0 +1,71 @@
+package bills.datamodel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * class BillStrings makes bills holding equal text share one String.
+ *
+ * Most of a bill's text repeats: a handful of bank accounts, the names of bills that
+ * recur every month, and notes left at the dialog's default. Read from a file, each copy
+ * would be a String and byte array of its own. The loaders and the bill dialog pass
+ * text through intern() instead, so each distinct value is held once. The pool is safe
+ * to use from the parallel loader's threads. It only takes short strings, and is
+ * emptied when it grows past its limit, so text that never repeats, such as long
+ * notes, cannot make it grow without end.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public final class BillStrings {
+
+    private static final int MAX_LENGTH = 128;        // Longer text is rarely repeated
+    private static final int MAX_ENTRIES = 1 << 16;   // Emptied past this many distinct values
+
+    private static final ConcurrentHashMap<String, String> POOL = new ConcurrentHashMap<>();
+    private static volatile boolean interning = !Boolean.getBoolean("bills.noInterning");
+
+    private BillStrings() {
+    }
+
+    /**
+     * @param text text for a bill, may be null.
+     * @return the pooled String equal to the text, the text itself if it is the first,
+     *         too long to pool or pooling is switched off.
+     */
+    public static String intern(String text) {
+        if (text == null || !interning || text.length() > MAX_LENGTH) {
+            return text;
+        }
+        String pooled = POOL.putIfAbsent(text, text);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (POOL.size() > MAX_ENTRIES) {
+            POOL.clear(); // Bills keep the Strings they have; only later copies stop sharing them
+        }
+        return text;
+    }
+
+    public static boolean isInterning() {
+        return interning;
+    }
+
+    /**
+     * Switch pooling on or off, as for measuring what it saves. On unless the
+     * bills.noInterning system property is true.
+     * @param interning true to pool text.
+     */
+    public static void setInterning(boolean interning) {
+        BillStrings.interning = interning;
+        if (!interning) {
+            POOL.clear();
+        }
+    }
+
+    /**
+     * @return number of distinct values pooled.
+     */
+    public static int size() {
+        return POOL.size();
+    }
+}
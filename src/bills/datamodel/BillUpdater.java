@@ -0,0 +1,176 @@
+package bills.datamodel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * class BillUpdater lets any thread change a BillData, which otherwise may only be
+ * changed on the thread that owns its bills list - the JavaFX application thread.
+ *
+ * Changes are put on a lock-free queue. The first change after a quiet spell asks the
+ * owning thread, through the executor (Platform::runLater in the application), to
+ * apply everything queued by then as one BillData transaction. So however many
+ * threads write, the list's listeners see one change and the after-batch action, such
+ * as requesting a save, runs once per batch. Threads read the bills through
+ * BillData.snapshot().
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BillUpdater {
+
+    private final BillData data;
+    private final Executor owner;
+    private final Runnable afterBatch;
+    private final ConcurrentLinkedQueue<Consumer<? super BillData>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicLong submitted = new AtomicLong();
+    private final List<Runnable> completions = new ArrayList<>(); // Owning thread only, run after each batch
+
+    // Guarded by this
+    private long applied;   // Changes applied so far
+    private long batches;   // Batches applied so far
+
+    /**
+     * Create on the thread that owns the bills list.
+     * @param data the bills to change.
+     * @param owner runs a task on the thread that owns the bills list, such as Platform::runLater.
+     * @param afterBatch run on that thread after each batch, for example a BillSaver's
+     *                   requestSave, or null for nothing.
+     */
+    public BillUpdater(BillData data, Executor owner, Runnable afterBatch) {
+        this.data = data;
+        this.owner = owner;
+        this.afterBatch = afterBatch;
+        data.snapshot(); // Start keeping the copies snapshots are taken from, on the owning thread
+    }
+
+    /**
+     * Queue a change to be made on the owning thread. Any thread.
+     * @param change given the BillData to change, for example data -> data.addBill(bill).
+     */
+    public void submit(Consumer<? super BillData> change) {
+        queue.add(change);
+        submitted.incrementAndGet();
+        if (drainScheduled.compareAndSet(false, true)) {
+            owner.execute(this::drain);
+        }
+    }
+
+    /**
+     * Queue a change that gives a result. Any thread.
+     * @param change given the BillData to change, returns the result.
+     * @return completed with the result once the batch holding the change has ended, so
+     *         snapshots taken after that see it, or with the exception the change threw.
+     */
+    public <T> CompletableFuture<T> call(Function<? super BillData, ? extends T> change) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(data -> {
+            try {
+                T value = change.apply(data);
+                completions.add(() -> result.complete(value));
+            } catch (RuntimeException e) {
+                completions.add(() -> result.completeExceptionally(e));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Queue bills to be added. Any thread, but the bills must not be touched again by it.
+     * @param bills the new bills.
+     */
+    public void addBills(Collection<? extends Bill> bills) {
+        List<Bill> added = new ArrayList<>(bills);
+        submit(data -> data.addBills(added));
+    }
+
+    /**
+     * Queue an edit of the bill with the id. Any thread.
+     * @param id the bill's id.
+     * @param edit applied to the bill on the owning thread.
+     */
+    public void updateBill(long id, Consumer<? super Bill> edit) {
+        submit(data -> data.updateBill(id, edit));
+    }
+
+    /**
+     * Queue removal of the bill with the id. Any thread.
+     * @param id the bill's id.
+     */
+    public void deleteBill(long id) {
+        submit(data -> data.deleteBill(id));
+    }
+
+    /**
+     * Wait until every change queued before the call has been applied. Must not be
+     * called on the owning thread, which applies them.
+     */
+    public void flush() {
+        long target = submitted.get();
+        boolean interrupted = false;
+        synchronized (this) {
+            while (applied < target) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized long getAppliedChanges() {
+        return applied;
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    // On the owning thread: apply everything queued as one transaction.
+    private void drain() {
+        drainScheduled.set(false); // Changes queued from now on schedule another drain
+        long[] count = new long[1];
+        try {
+            data.transaction(() -> {
+                Consumer<? super BillData> change;
+                while ((change = queue.poll()) != null) {
+                    count[0]++;
+                    try {
+                        change.accept(data);
+                    } catch (RuntimeException e) {
+                        System.out.println("Problem applying bill change: " + e);
+                        e.printStackTrace();
+                    }
+                }
+            });
+            if (count[0] > 0 && afterBatch != null) {
+                afterBatch.run();
+            }
+        } finally {
+            for (Runnable completion : completions) {
+                completion.run();
+            }
+            completions.clear();
+            synchronized (this) {
+                applied += count[0];
+                if (count[0] > 0) {
+                    batches++;
+                }
+                notifyAll();
+            }
+        }
+    }
+}
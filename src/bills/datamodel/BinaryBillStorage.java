@@ -0,0 +1,235 @@
+package bills.datamodel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * class BinaryBillStorage keeps bills in a compact, versioned binary snapshot file.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   int    magic "BILL"
+ *   short  format version
+ *   short  reserved
+ *   long   journal sequence number
+ *   int    number of strings, then each string as int byte length and UTF-8 bytes
+ *   int    number of bills, then one fixed width record per bill:
+ *          int name, int bank account, int notes  - indexes into the string table, -1 for none
+ *          int date due, int date started, int date changed - epoch days, NO_DATE for none
+ *          long amount, long previous amount - in pence
+ *          int recurrence - Recurrence ordinal (version 2 onwards)
+ *          long id - the bill's id, 0 for none (version 3 onwards)
+ * </pre>
+ * Names, accounts and notes repeat a lot, so each distinct value is stored once.
+ * The file is read through a memory mapped FileChannel.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class BinaryBillStorage implements BillStorage {
+
+    /** File extension that selects this storage in BillData. */
+    public static final String EXTENSION = ".bills";
+
+    private static final int MAGIC = 0x42494C4C; // "BILL"
+    private static final short VERSION = 3; // 2 added recurrence, 3 ids, older files are still read
+    private static final int NO_STRING = -1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int RECORD_SIZE_V1 = 6 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int RECORD_SIZE_V2 = RECORD_SIZE_V1 + Integer.BYTES;
+    private static final int RECORD_SIZE = RECORD_SIZE_V2 + Long.BYTES;
+    private static final Recurrence[] RECURRENCES = Recurrence.values();
+
+    private final Path path;
+
+    public BinaryBillStorage(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public long load(List<Bill> bills) throws IOException {
+        return forEach(bills::add);
+    }
+
+    /**
+     * Read the bills one at a time from the mapped file. Only the string table is held.
+     */
+    @Override
+    public long forEach(Consumer<? super Bill> action) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Bills file too large to map: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(buffer, action);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | DateTimeException e) {
+                // A length or count read from a damaged file runs past its end
+                throw new IOException("Corrupt bills file: " + path, e);
+            }
+        }
+    }
+
+    // Read the header, string table and bills, returning the sequence number saved with them.
+    private long read(MappedByteBuffer buffer, Consumer<? super Bill> action) throws IOException {
+        if (buffer.remaining() < 20 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary bills file: " + path);
+        }
+        short version = buffer.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported bills file version " + version + ": " + path);
+        }
+        buffer.getShort(); // reserved
+        long seq = buffer.getLong();
+
+        int stringCount = buffer.getInt();
+        if (stringCount < 0 || stringCount > buffer.remaining() / 4) {
+            throw new IOException("Corrupt bills file: " + path);
+        }
+        String[] strings = new String[stringCount];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Corrupt bills file: " + path);
+            }
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = BillStrings.intern(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        }
+
+        int count = buffer.getInt();
+        int recordSize = version == 1 ? RECORD_SIZE_V1 : version == 2 ? RECORD_SIZE_V2 : RECORD_SIZE;
+        if (count < 0 || buffer.remaining() < (long) count * recordSize) {
+            throw new IOException("Bills file is truncated: " + path);
+        }
+        for (int i = 0; i < count; i++) {
+            String name = string(strings, buffer.getInt());
+            String account = string(strings, buffer.getInt());
+            String notes = string(strings, buffer.getInt());
+            LocalDate due = date(buffer.getInt());
+            LocalDate started = date(buffer.getInt());
+            LocalDate changed = date(buffer.getInt());
+            double amount = buffer.getLong() / 100.0;
+            double previous = buffer.getLong() / 100.0;
+            Bill bill = new Bill(name, due, amount, account, notes, started, changed, previous);
+            if (version > 1) {
+                int recurrence = buffer.getInt();
+                if (recurrence < 0 || recurrence >= RECURRENCES.length) {
+                    throw new IOException("Bad recurrence " + recurrence);
+                }
+                bill.setRecurrence(RECURRENCES[recurrence]);
+            }
+            if (version > 2) {
+                bill.setId(buffer.getLong());
+            }
+            action.accept(bill);
+        }
+        return seq;
+    }
+
+    /**
+     * Write the snapshot through a temporary file, so a failed write leaves the previous file in place.
+     * Amounts are rounded to the nearest penny.
+     */
+    @Override
+    public void save(List<Bill> bills, long seq) throws IOException {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] codes = new int[bills.size() * 3];
+        int c = 0;
+        for (Bill bill : bills) {
+            codes[c++] = intern(bill.getName(), stringIndex, strings);
+            codes[c++] = intern(bill.getBankAccount(), stringIndex, strings);
+            codes[c++] = intern(bill.getNotes(), stringIndex, strings);
+        }
+
+        Path temp = Paths.get(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeLong(seq);
+
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(bills.size());
+            c = 0;
+            for (Bill bill : bills) {
+                out.writeInt(codes[c++]);
+                out.writeInt(codes[c++]);
+                out.writeInt(codes[c++]);
+                out.writeInt(epochDay(bill.getDateOfPayment()));
+                out.writeInt(epochDay(bill.getDateStarted()));
+                out.writeInt(epochDay(bill.getDateChanged()));
+                out.writeLong(Math.round(bill.getAmount() * 100));
+                out.writeLong(Math.round(bill.getPreviousAmount() * 100));
+                out.writeInt(bill.getRecurrence().ordinal());
+                out.writeLong(bill.getId());
+            }
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int intern(String value, Map<String, Integer> stringIndex, List<String> strings) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer index = stringIndex.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private static String string(String[] strings, int index) throws IOException {
+        if (index == NO_STRING) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Bad string index " + index);
+        }
+        return strings[index];
+    }
+
+    private static int epochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -0,0 +1,168 @@
+package bills.datamodel;
+
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * class DueDateIndex keeps the bills sorted by due date so date questions -
+ * what is due between two dates, what is due next, what is overdue - are
+ * answered in logarithmic time plus the size of the answer, not by scanning
+ * every bill.
+ *
+ * The index follows the observable bills list and each bill's dateOfPayment
+ * property. Bills without a due date are not indexed.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class DueDateIndex {
+
+    private final ObservableList<Bill> bills;
+    private final NavigableMap<LocalDate, List<Bill>> byDate = new TreeMap<>();
+    private int size;
+
+    // One listener shared by every bill - the property's bean is the bill that moved.
+    private final ChangeListener<LocalDate> dateListener = this::dateChanged;
+    private final ListChangeListener<Bill> listListener = this::listChanged;
+
+    DueDateIndex(ObservableList<Bill> bills) {
+        this.bills = bills;
+        for (Bill bill : bills) {
+            added(bill);
+        }
+        bills.addListener(listListener);
+    }
+
+    /**
+     * Stop following the bills list.
+     */
+    void detach() {
+        bills.removeListener(listListener);
+        for (Bill bill : bills) {
+            bill.dateOfPaymentProperty().removeListener(dateListener);
+        }
+    }
+
+    /**
+     * @return number of bills with a due date.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param from first due date, inclusive.
+     * @param to last due date, inclusive.
+     * @return bills due between the two dates, earliest first.
+     */
+    public List<Bill> dueBetween(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        return flatten(byDate.subMap(from, true, to, true).values());
+    }
+
+    /**
+     * @param from first due date, inclusive.
+     * @param count how many bills to return at most.
+     * @return the next bills due on or after the date, earliest first.
+     */
+    public List<Bill> nextDue(LocalDate from, int count) {
+        List<Bill> next = new ArrayList<>(Math.min(count, size));
+        for (List<Bill> sameDay : byDate.tailMap(from, true).values()) {
+            for (Bill bill : sameDay) {
+                if (next.size() == count) {
+                    return next;
+                }
+                next.add(bill);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @param today the date to check against.
+     * @return bills due before the date, earliest first.
+     */
+    public List<Bill> overdue(LocalDate today) {
+        return flatten(byDate.headMap(today, false).values());
+    }
+
+    /**
+     * @return the earliest due date, or null if no bill has one.
+     */
+    public LocalDate firstDueDate() {
+        return byDate.isEmpty() ? null : byDate.firstKey();
+    }
+
+    /**
+     * @return the latest due date, or null if no bill has one.
+     */
+    public LocalDate lastDueDate() {
+        return byDate.isEmpty() ? null : byDate.lastKey();
+    }
+
+    private static List<Bill> flatten(Collection<List<Bill>> days) {
+        List<Bill> result = new ArrayList<>();
+        for (List<Bill> sameDay : days) {
+            result.addAll(sameDay);
+        }
+        return result;
+    }
+
+    private void listChanged(ListChangeListener.Change<? extends Bill> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue; // Order in the list doesn't matter here.
+            }
+            for (Bill bill : change.getRemoved()) {
+                bill.dateOfPaymentProperty().removeListener(dateListener);
+                remove(bill, bill.getDateOfPayment());
+            }
+            for (Bill bill : change.getAddedSubList()) {
+                added(bill);
+            }
+        }
+    }
+
+    private void added(Bill bill) {
+        bill.dateOfPaymentProperty().addListener(dateListener);
+        insert(bill, bill.getDateOfPayment());
+    }
+
+    private void dateChanged(ObservableValue<? extends LocalDate> observable, LocalDate oldDate, LocalDate newDate) {
+        Bill bill = (Bill) ((ReadOnlyProperty<?>) observable).getBean();
+        remove(bill, oldDate);
+        insert(bill, newDate);
+    }
+
+    private void insert(Bill bill, LocalDate date) {
+        if (date != null) {
+            byDate.computeIfAbsent(date, d -> new ArrayList<>(2)).add(bill);
+            size++;
+        }
+    }
+
+    private void remove(Bill bill, LocalDate date) {
+        if (date == null) {
+            return;
+        }
+        List<Bill> sameDay = byDate.get(date);
+        if (sameDay != null && sameDay.remove(bill)) {
+            size--;
+            if (sameDay.isEmpty()) {
+                byDate.remove(date);
+            }
+        }
+    }
+}
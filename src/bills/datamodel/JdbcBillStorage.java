@@ -0,0 +1,563 @@
+package bills.datamodel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * class JdbcBillStorage keeps bills in an embedded SQL database, such as H2 or SQLite,
+ * reached through JDBC. The database's driver must be on the class or module path.
+ *
+ * Each bill is a row keyed by the bill's id, with its dates as epoch days and amounts
+ * in pence. A position column keeps the list order. The rows last written are
+ * remembered, so save() only deletes, inserts, updates and moves the rows that changed,
+ * in batches in one transaction.
+ * Positions are spaced apart, so a bill added or edited between two others gets a
+ * position between theirs rather than renumbering the rows after it.
+ *
+ * Queries by due date, account and name run in the database using its indexes,
+ * without loading the bills.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class JdbcBillStorage implements BillStorage, Closeable {
+
+    /** BillData uses this storage for file names starting with this prefix. */
+    public static final String URL_PREFIX = "jdbc:";
+
+    private static final long POSITION_GAP = 1L << 20;
+    private static final int BATCH_SIZE = 1000;
+    private static final String JOURNAL_SEQ = "journal_seq";
+    private static final String COLUMNS =
+            "name, due_day, amount_cents, account, notes, started_day, changed_day, previous_cents, recurrence";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS bills (id BIGINT PRIMARY KEY, position BIGINT NOT NULL,"
+                    + " name VARCHAR, due_day INTEGER, amount_cents BIGINT NOT NULL, account VARCHAR,"
+                    + " notes VARCHAR, started_day INTEGER, changed_day INTEGER,"
+                    + " previous_cents BIGINT NOT NULL, recurrence INTEGER NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS bills_position ON bills (position)",
+            "CREATE INDEX IF NOT EXISTS bills_due_day ON bills (due_day)",
+            "CREATE INDEX IF NOT EXISTS bills_account ON bills (account)",
+            "CREATE INDEX IF NOT EXISTS bills_name ON bills (name)",
+            // value is quoted as H2 reserves the word
+            "CREATE TABLE IF NOT EXISTS bill_meta (name VARCHAR(40) PRIMARY KEY, \"value\" BIGINT NOT NULL)"
+    };
+    private static final Recurrence[] RECURRENCES = Recurrence.values();
+
+    private final String url;
+    private final Path path;
+    private Connection connection;
+    private List<StoredRow> written; // Rows in the database in list order, null until read
+    private long nextId;
+
+    /**
+     * @param url JDBC URL of the database, for example jdbc:h2:file:/home/me/bills or
+     *            jdbc:sqlite:/home/me/bills.db
+     */
+    public JdbcBillStorage(String url) {
+        this.url = url;
+        String location = location(url);
+        this.path = location == null ? null : Paths.get(location);
+    }
+
+    // The database file named in the URL, which the journal is kept beside: what follows
+    // jdbc:<driver>: and an optional file:, up to any ;options or ?parameters, with ~ for
+    // the home directory as H2 reads it. Null for in-memory and server databases, which
+    // have no file to keep a journal beside.
+    private static String location(String url) {
+        int options = url.indexOf(';');
+        String location = options < 0 ? url : url.substring(0, options);
+        int driverEnd = location.indexOf(':', URL_PREFIX.length());
+        if (driverEnd < 0) {
+            return null;
+        }
+        location = location.substring(driverEnd + 1);
+        if (location.startsWith("file:")) {
+            location = location.substring("file:".length());
+        }
+        int parameters = location.indexOf('?');
+        if (parameters >= 0) {
+            if (location.indexOf("mode=memory", parameters) >= 0) {
+                return null;
+            }
+            location = location.substring(0, parameters);
+        }
+        if (location.isEmpty() || location.equals(":memory:") || location.startsWith("mem:")
+                || location.startsWith("tcp:") || location.startsWith("ssl:") || location.startsWith("zip:")
+                || location.startsWith("//")) {
+            return null;
+        }
+        if (location.equals("~") || location.startsWith("~/")) {
+            location = System.getProperty("user.home") + location.substring(1);
+        }
+        return location;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the database file named in the URL, or null for an in-memory or server database.
+     */
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized long load(List<Bill> bills) throws IOException {
+        try {
+            readWritten();
+            for (StoredRow stored : written) {
+                bills.add(stored.row.toBill(stored.id));
+            }
+            return readSeq();
+        } catch (SQLException e) {
+            throw new IOException("Problem reading bills database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Bring the database into line with the list, writing only the rows that changed.
+     * Bills without an id, which only happens when this is used without BillData, are
+     * given one.
+     */
+    @Override
+    public synchronized void save(List<Bill> bills, long seq) throws IOException {
+        try {
+            if (written == null) {
+                readWritten();
+            }
+            Connection db = connect();
+            db.setAutoCommit(false);
+            try {
+                written = write(db, bills);
+                writeSeq(db, seq);
+                db.commit();
+            } catch (SQLException | RuntimeException e) {
+                db.rollback();
+                written = null; // Read back what the database holds before the next save
+                throw e;
+            } finally {
+                db.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Problem writing bills database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copy the bills from an XML bills file, including any journaled changes, into the
+     * database. Only done into an empty database, so running it twice does no harm.
+     * @param xmlFile the XML bills file.
+     * @return number of bills copied.
+     * @throws IOException if the database already has bills, or either cannot be used.
+     */
+    public synchronized int migrateFrom(Path xmlFile) throws IOException {
+        BillData database = new BillData(this);
+        database.loadBills();
+        if (!database.getBills().isEmpty()) {
+            throw new IOException("Bills database already holds " + database.getBills().size() + " bills");
+        }
+        BillData xml = new BillData(new XmlBillStorage(xmlFile));
+        xml.loadBills();
+        database.addBills(xml.getBills()); // Keeps the bills' ids and saves the id counter past them
+        database.saveBills();
+        if (written == null) { // saveBills() reports failures rather than throwing them
+            throw new IOException("Problem writing bills database");
+        }
+        return database.getBills().size();
+    }
+
+    /**
+     * @return bills due between the dates, inclusive, by due date.
+     */
+    public synchronized List<Bill> dueBetween(LocalDate from, LocalDate to) throws IOException {
+        return query("SELECT id, " + COLUMNS + " FROM bills WHERE due_day BETWEEN ? AND ? ORDER BY due_day, position",
+                from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * @return bills paid from the account, in list order.
+     */
+    public synchronized List<Bill> forAccount(String account) throws IOException {
+        return query("SELECT id, " + COLUMNS + " FROM bills WHERE account = ? ORDER BY position", account);
+    }
+
+    /**
+     * @return bills whose names start with the prefix, in list order.
+     */
+    public synchronized List<Bill> namedStartingWith(String prefix) throws IOException {
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return query("SELECT id, " + COLUMNS + " FROM bills WHERE name LIKE ? ESCAPE '\\' ORDER BY position", pattern);
+    }
+
+    /**
+     * @return total in pence of the bills due between the dates, inclusive.
+     */
+    public synchronized long totalCentsDueBetween(LocalDate from, LocalDate to) throws IOException {
+        try (PreparedStatement statement = connect().prepareStatement(
+                "SELECT COALESCE(SUM(amount_cents), 0) FROM bills WHERE due_day BETWEEN ? AND ?")) {
+            statement.setLong(1, from.toEpochDay());
+            statement.setLong(2, to.toEpochDay());
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                return result.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Problem reading bills database: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException("Problem closing bills database: " + e.getMessage(), e);
+            } finally {
+                connection = null;
+                written = null;
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        if (connection == null) {
+            connection = DriverManager.getConnection(url);
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+        }
+        return connection;
+    }
+
+    private void readWritten() throws SQLException {
+        List<StoredRow> rows = new ArrayList<>();
+        long maxId = 0;
+        try (Statement statement = connect().createStatement();
+             ResultSet result = statement.executeQuery(
+                     "SELECT id, position, " + COLUMNS + " FROM bills ORDER BY position")) {
+            while (result.next()) {
+                long id = result.getLong(1);
+                rows.add(new StoredRow(id, result.getLong(2), Row.read(result, 3)));
+                maxId = Math.max(maxId, id);
+            }
+        }
+        written = rows;
+        nextId = maxId + 1;
+    }
+
+    private long readSeq() throws SQLException {
+        try (PreparedStatement statement = connect().prepareStatement("SELECT \"value\" FROM bill_meta WHERE name = ?")) {
+            statement.setString(1, JOURNAL_SEQ);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void writeSeq(Connection db, long seq) throws SQLException {
+        try (PreparedStatement update = db.prepareStatement("UPDATE bill_meta SET \"value\" = ? WHERE name = ?")) {
+            update.setLong(1, seq);
+            update.setString(2, JOURNAL_SEQ);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = db.prepareStatement("INSERT INTO bill_meta (name, \"value\") VALUES (?, ?)")) {
+            insert.setString(1, JOURNAL_SEQ);
+            insert.setLong(2, seq);
+            insert.executeUpdate();
+        }
+    }
+
+    // Work out which rows changed since the last save and write just those.
+    private List<StoredRow> write(Connection db, List<Bill> bills) throws SQLException {
+        Map<Long, StoredRow> previous = new HashMap<>(written.size() * 2);
+        for (StoredRow stored : written) {
+            previous.put(stored.id, stored);
+        }
+        int count = bills.size();
+        long[] ids = new long[count];
+        Row[] rows = new Row[count];
+        StoredRow[] kept = new StoredRow[count]; // The bill's row as last written, null if new
+        for (int i = 0; i < count; i++) {
+            Bill bill = bills.get(i);
+            if (bill.getId() <= 0) {
+                bill.setId(nextId++);
+            }
+            ids[i] = bill.getId();
+            rows[i] = new Row(bill);
+            kept[i] = previous.remove(ids[i]); // A repeated id is then inserted, and the key rejects it
+            nextId = Math.max(nextId, ids[i] + 1);
+        }
+
+        // Keep existing positions while they still go up, then fit the rest in the gaps.
+        long[] positions = new long[count];
+        boolean[] keepPosition = new boolean[count];
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (kept[i] != null && kept[i].position > last) {
+                keepPosition[i] = true;
+                positions[i] = last = kept[i].position;
+            }
+        }
+        if (!fillGaps(positions, keepPosition)) {
+            for (int i = 0; i < count; i++) { // No room left between two rows - number them all again
+                positions[i] = (i + 1) * POSITION_GAP;
+                keepPosition[i] = kept[i] != null && kept[i].position == positions[i];
+            }
+        }
+
+        List<StoredRow> result = new ArrayList<>(count);
+        try (PreparedStatement delete = db.prepareStatement("DELETE FROM bills WHERE id = ?");
+             PreparedStatement insert = db.prepareStatement("INSERT INTO bills (position, " + COLUMNS
+                     + ", id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement update = db.prepareStatement("UPDATE bills SET position = ?, "
+                     + COLUMNS.replace(",", " = ?,") + " = ? WHERE id = ?");
+             PreparedStatement move = db.prepareStatement("UPDATE bills SET position = ? WHERE id = ?")) {
+            int deletes = 0;
+            for (StoredRow gone : previous.values()) {
+                delete.setLong(1, gone.id);
+                delete.addBatch();
+                deletes = flush(delete, deletes + 1);
+            }
+            delete.executeBatch();
+
+            int inserts = 0;
+            int updates = 0;
+            int moves = 0;
+            for (int i = 0; i < count; i++) {
+                if (kept[i] == null || !kept[i].row.equals(rows[i])) {
+                    PreparedStatement statement = kept[i] == null ? insert : update;
+                    statement.setLong(1, positions[i]);
+                    rows[i].bind(statement, 2);
+                    statement.setLong(11, ids[i]);
+                    statement.addBatch();
+                    if (kept[i] == null) {
+                        inserts = flush(insert, inserts + 1);
+                    } else {
+                        updates = flush(update, updates + 1);
+                    }
+                } else if (!keepPosition[i]) {
+                    move.setLong(1, positions[i]);
+                    move.setLong(2, ids[i]);
+                    move.addBatch();
+                    moves = flush(move, moves + 1);
+                }
+                result.add(new StoredRow(ids[i], positions[i], rows[i]));
+            }
+            insert.executeBatch();
+            update.executeBatch();
+            move.executeBatch();
+        }
+        return result;
+    }
+
+    private static int flush(PreparedStatement statement, int batched) throws SQLException {
+        if (batched < BATCH_SIZE) {
+            return batched;
+        }
+        statement.executeBatch();
+        return 0;
+    }
+
+    // Give each row without a kept position one between its neighbours'. False if a gap is too small.
+    private static boolean fillGaps(long[] positions, boolean[] keepPosition) {
+        int i = 0;
+        while (i < positions.length) {
+            if (keepPosition[i]) {
+                i++;
+                continue;
+            }
+            int runEnd = i;
+            while (runEnd < positions.length && !keepPosition[runEnd]) {
+                runEnd++;
+            }
+            int run = runEnd - i;
+            if (i == 0 && runEnd < positions.length) { // Bills added at the top go below the first position
+                for (int j = 0; j < run; j++) {
+                    positions[j] = positions[runEnd] - POSITION_GAP * (run - j);
+                }
+                i = runEnd;
+                continue;
+            }
+            long before = i == 0 ? 0 : positions[i - 1];
+            long step;
+            if (runEnd == positions.length) {
+                step = POSITION_GAP;
+            } else {
+                step = (positions[runEnd] - before) / (run + 1);
+                if (step < 1) {
+                    return false;
+                }
+            }
+            for (int j = 0; j < run; j++) {
+                positions[i + j] = before + step * (j + 1);
+            }
+            i = runEnd;
+        }
+        return true;
+    }
+
+    private List<Bill> query(String sql, Object... parameters) throws IOException {
+        try (PreparedStatement statement = connect().prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            List<Bill> bills = new ArrayList<>();
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    bills.add(Row.read(result, 2).toBill(result.getLong(1)));
+                }
+            }
+            return bills;
+        } catch (SQLException e) {
+            throw new IOException("Problem reading bills database: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class StoredRow {
+        final long id;
+        final long position;
+        final Row row;
+
+        StoredRow(long id, long position, Row row) {
+            this.id = id;
+            this.position = position;
+            this.row = row;
+        }
+    }
+
+    // A bill's values as stored, compared to find what changed.
+    private static final class Row {
+        private static final int NO_DATE = Integer.MIN_VALUE;
+
+        final String name;
+        final int dueDay;
+        final long amountCents;
+        final String account;
+        final String notes;
+        final int startedDay;
+        final int changedDay;
+        final long previousCents;
+        final int recurrence;
+
+        Row(Bill bill) {
+            this(bill.getName(), epochDay(bill.getDateOfPayment()), Math.round(bill.getAmount() * 100),
+                    bill.getBankAccount(), bill.getNotes(), epochDay(bill.getDateStarted()),
+                    epochDay(bill.getDateChanged()), Math.round(bill.getPreviousAmount() * 100),
+                    bill.getRecurrence().ordinal());
+        }
+
+        Row(String name, int dueDay, long amountCents, String account, String notes,
+            int startedDay, int changedDay, long previousCents, int recurrence) {
+            this.name = name;
+            this.dueDay = dueDay;
+            this.amountCents = amountCents;
+            this.account = account;
+            this.notes = notes;
+            this.startedDay = startedDay;
+            this.changedDay = changedDay;
+            this.previousCents = previousCents;
+            this.recurrence = recurrence;
+        }
+
+        static Row read(ResultSet result, int first) throws SQLException {
+            int recurrence = result.getInt(first + 8);
+            if (recurrence < 0 || recurrence >= RECURRENCES.length) {
+                throw new SQLException("Bad recurrence " + recurrence);
+            }
+            return new Row(BillStrings.intern(result.getString(first)), day(result, first + 1),
+                    result.getLong(first + 2), BillStrings.intern(result.getString(first + 3)),
+                    BillStrings.intern(result.getString(first + 4)), day(result, first + 5),
+                    day(result, first + 6), result.getLong(first + 7), recurrence);
+        }
+
+        void bind(PreparedStatement statement, int first) throws SQLException {
+            statement.setString(first, name);
+            bindDay(statement, first + 1, dueDay);
+            statement.setLong(first + 2, amountCents);
+            statement.setString(first + 3, account);
+            statement.setString(first + 4, notes);
+            bindDay(statement, first + 5, startedDay);
+            bindDay(statement, first + 6, changedDay);
+            statement.setLong(first + 7, previousCents);
+            statement.setInt(first + 8, recurrence);
+        }
+
+        Bill toBill(long id) {
+            Bill bill = new Bill(name, date(dueDay), amountCents / 100.0, account, notes,
+                    date(startedDay), date(changedDay), previousCents / 100.0);
+            bill.setRecurrence(RECURRENCES[recurrence]);
+            bill.setId(id);
+            return bill;
+        }
+
+        private static int day(ResultSet result, int column) throws SQLException {
+            int day = result.getInt(column);
+            return result.wasNull() ? NO_DATE : day;
+        }
+
+        private static void bindDay(PreparedStatement statement, int column, int day) throws SQLException {
+            if (day == NO_DATE) {
+                statement.setNull(column, Types.INTEGER);
+            } else {
+                statement.setInt(column, day);
+            }
+        }
+
+        private static int epochDay(LocalDate date) {
+            return date == null ? NO_DATE : (int) date.toEpochDay();
+        }
+
+        private static LocalDate date(int epochDay) {
+            return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Row)) {
+                return false;
+            }
+            Row row = (Row) other;
+            return dueDay == row.dueDay && amountCents == row.amountCents && startedDay == row.startedDay
+                    && changedDay == row.changedDay && previousCents == row.previousCents
+                    && recurrence == row.recurrence && Objects.equals(name, row.name)
+                    && Objects.equals(account, row.account) && Objects.equals(notes, row.notes);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Objects.hashCode(name);
+            hash = 31 * hash + dueDay;
+            hash = 31 * hash + Long.hashCode(amountCents);
+            hash = 31 * hash + Objects.hashCode(account);
+            hash = 31 * hash + Objects.hashCode(notes);
+            hash = 31 * hash + changedDay;
+            return 31 * hash + recurrence;
+        }
+    }
+}
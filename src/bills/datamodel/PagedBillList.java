@@ -0,0 +1,132 @@
+package bills.datamodel;
+
+import javafx.collections.ObservableListBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class PagedBillList is a read only list of the bills in an XML file that only
+ * holds the bills near where it is being read.
+ *
+ * A BillFileIndex gives the file offset of every bill. get() reads and parses the
+ * page of bills around the requested one and keeps the most recently used pages in
+ * an LRU cache, so a TableView scrolling over tens of millions of bills only ever
+ * has a few thousand Bill objects in memory.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class PagedBillList extends ObservableListBase<Bill> implements Closeable {
+
+    public static final int PAGE_SIZE = 256;
+    private static final int MAX_CACHED_PAGES = 64;
+
+    private static final byte[] PAGE_START = "<page>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAGE_END = "</page>".getBytes(StandardCharsets.UTF_8);
+
+    private final BillFileIndex index;
+    private final FileChannel channel;
+    private final Map<Integer, List<Bill>> pages =
+            new LinkedHashMap<Integer, List<Bill>>(MAX_CACHED_PAGES + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<Bill>> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+
+    private PagedBillList(BillFileIndex index, FileChannel channel) {
+        this.index = index;
+        this.channel = channel;
+    }
+
+    /**
+     * Open an XML bills file for paged reading, indexing it first if needed.
+     * @param xmlFile the bills file.
+     * @return the paged list.
+     * @throws IOException if the file cannot be indexed or opened.
+     */
+    public static PagedBillList open(Path xmlFile) throws IOException {
+        BillFileIndex index = BillFileIndex.open(xmlFile);
+        return new PagedBillList(index, FileChannel.open(xmlFile, StandardOpenOption.READ));
+    }
+
+    @Override
+    public Bill get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size());
+        }
+        return page(i / PAGE_SIZE).get(i % PAGE_SIZE);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return total of every bill's amount in the file, worked out while indexing.
+     */
+    public double getTotal() {
+        return index.getTotalCents() / 100.0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        channel.close();
+    }
+
+    private List<Bill> page(int pageNumber) {
+        List<Bill> page = pages.get(pageNumber);
+        if (page == null) {
+            try {
+                page = readPage(pageNumber);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pages.put(pageNumber, page);
+        }
+        return page;
+    }
+
+    private List<Bill> readPage(int pageNumber) throws IOException {
+        int first = pageNumber * PAGE_SIZE;
+        int count = Math.min(PAGE_SIZE, size() - first);
+        long start = index.offset(first);
+        long end = index.offset(first + count);
+
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, start + bytes.position()) < 0) {
+                throw new IOException("Bills file changed while reading");
+            }
+        }
+
+        // Parse the page's bill elements wrapped in a root element of their own.
+        List<Bill> page = new ArrayList<>(count);
+        InputStream in = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(PAGE_START),
+                new ByteArrayInputStream(bytes.array()),
+                new ByteArrayInputStream(PAGE_END))));
+        XmlBillStorage.readBills(in, page::add, count);
+        if (page.size() != count) {
+            throw new IOException("Bills file index is out of date");
+        }
+        return page;
+    }
+}
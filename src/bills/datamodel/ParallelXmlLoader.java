@@ -0,0 +1,250 @@
+package bills.datamodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * class ParallelXmlLoader reads an XML bills file on several threads.
+ *
+ * The file is split into chunks that each start at a bill element, found by searching
+ * for the bytes of the opening tag. The writer escapes '<' in text, so the tag cannot
+ * appear inside a value. Each chunk is memory mapped and parsed on a fork/join pool
+ * as a run of bill elements, the same way PagedBillList reads a page, and the chunks'
+ * bills are then joined in file order.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class ParallelXmlLoader {
+
+    private static final int MIN_CHUNK_SIZE = 1 << 20; // Smaller chunks cost more to set up than they save
+    private static final int MAX_CHUNK_SIZE = 1 << 30; // A mapping must fit in an int
+    private static final int CHUNKS_PER_THREAD = 4;    // Spare chunks keep threads busy when some parse slower
+    private static final int SEARCH_WINDOW = 1 << 16;
+
+    private static final byte[] BILL_START = "<bill>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BILL_END = "</bill>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNK_START = "<chunk>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNK_END = "</chunk>".getBytes(StandardCharsets.UTF_8);
+
+    private ParallelXmlLoader() {
+    }
+
+    /**
+     * Load every bill in the file.
+     * @param xmlFile the bills file, UTF-8 as XmlBillStorage writes it.
+     * @param bills list the bills are added to, in file order.
+     * @param pool pool to parse the chunks on.
+     * @return the journal sequence number held by the root element, 0 if none.
+     * @throws IOException if the file cannot be read or is not a bills file.
+     */
+    static long load(Path xmlFile, List<Bill> bills, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(xmlFile, StandardOpenOption.READ)) {
+            long firstBill = find(channel, BILL_START, 0, channel.size());
+            long seq = readJournalSeq(channel, firstBill < 0 ? channel.size() : firstBill);
+            if (firstBill < 0) {
+                return seq; // No bills
+            }
+            long billsEnd = findLast(channel, BILL_END) + BILL_END.length;
+            if (billsEnd < firstBill) {
+                throw new IOException("Problem reading bill: no closing bill tag in " + xmlFile);
+            }
+
+            long[] bounds = chunkBounds(channel, firstBill, billsEnd, pool.getParallelism());
+            List<List<Bill>> chunks = new ArrayList<>(Collections.nCopies(bounds.length - 1, null));
+            try {
+                pool.invoke(new ParseTask(channel, bounds, chunks, 0, chunks.size()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int count = 0;
+            for (List<Bill> chunk : chunks) {
+                count += chunk.size();
+            }
+            if (bills instanceof ArrayList) {
+                ((ArrayList<Bill>) bills).ensureCapacity(bills.size() + count);
+            }
+            for (List<Bill> chunk : chunks) {
+                bills.addAll(chunk);
+            }
+            return seq;
+        }
+    }
+
+    // Offsets where chunks start, each at a bill's opening tag, then the end of the last bill.
+    private static long[] chunkBounds(FileChannel channel, long firstBill, long billsEnd, int threads)
+            throws IOException {
+        long length = billsEnd - firstBill;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE / 2,
+                Math.max(MIN_CHUNK_SIZE, length / ((long) threads * CHUNKS_PER_THREAD)));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(firstBill);
+        long next = firstBill + chunkSize;
+        while (next < billsEnd) {
+            long start = find(channel, BILL_START, next, billsEnd);
+            if (start < 0) {
+                break;
+            }
+            if (start - bounds.get(bounds.size() - 1) > MAX_CHUNK_SIZE) {
+                throw new IOException("Problem reading bill: bill larger than " + MAX_CHUNK_SIZE + " bytes");
+            }
+            bounds.add(start);
+            next = start + chunkSize;
+        }
+        bounds.add(billsEnd);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // First offset of the pattern at or after from and before to, or -1.
+    private static long find(FileChannel channel, byte[] pattern, long from, long to) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SEARCH_WINDOW);
+        for (long position = from; position < to; position += SEARCH_WINDOW - pattern.length + 1) {
+            window.clear();
+            window.limit((int) Math.min(SEARCH_WINDOW, to - position));
+            readFully(channel, window, position);
+            int match = indexOf(window.array(), window.limit(), pattern);
+            if (match >= 0) {
+                return position + match;
+            }
+            if (window.limit() < SEARCH_WINDOW) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    // Last offset of the pattern in the file, or -1.
+    private static long findLast(FileChannel channel, byte[] pattern) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SEARCH_WINDOW);
+        long end = channel.size();
+        while (end > 0) {
+            long position = Math.max(0, end - SEARCH_WINDOW);
+            window.clear();
+            window.limit((int) (end - position));
+            readFully(channel, window, position);
+            for (int i = window.limit() - pattern.length; i >= 0; i--) {
+                if (matchesAt(window.array(), i, pattern)) {
+                    return position + i;
+                }
+            }
+            if (position == 0) {
+                break;
+            }
+            end = position + pattern.length - 1; // Overlap so a pattern across windows is found
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Bills file changed while reading");
+            }
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= length; i++) {
+            if (matchesAt(bytes, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(byte[] bytes, int offset, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (bytes[offset + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The root element comes before the first bill and carries the journal sequence number.
+    private static long readJournalSeq(FileChannel channel, long headerEnd) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(headerEnd, MAX_CHUNK_SIZE));
+        return XmlBillStorage.readJournalSeq(new ByteBufferInputStream(header));
+    }
+
+    // Each task sets only its own chunks, so the list is never resized while they run.
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final List<List<Bill>> chunks;
+        private final int from;
+        private final int to;
+
+        ParseTask(FileChannel channel, long[] bounds, List<List<Bill>> chunks, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(channel, bounds, chunks, from, middle),
+                        new ParseTask(channel, bounds, chunks, middle, to));
+                return;
+            }
+            try {
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[from + 1] - bounds[from]);
+                List<Bill> chunk = new ArrayList<>();
+                InputStream in = new SequenceInputStream(new ByteArrayInputStream(CHUNK_START),
+                        new SequenceInputStream(new ByteBufferInputStream(bytes), new ByteArrayInputStream(CHUNK_END)));
+                XmlBillStorage.readBills(in, chunk::add, Integer.MAX_VALUE);
+                chunks.set(from, chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
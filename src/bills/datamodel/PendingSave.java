@@ -0,0 +1,59 @@
+package bills.datamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * class PendingSave holds what one save has to write, captured on the thread that
+ * owns the bills list so it can be written out on another thread.
+ *
+ * Either a full copy of the bills (with the journal sequence number it includes),
+ * journal records to append after it, or both.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class PendingSave {
+
+    private List<Bill> bills;            // Copy of every bill, null when only the journal is written
+    private long seq;                    // Journal sequence number included in the copy
+    private final List<String> journalRecords;
+    private final long requestedAt;      // System.nanoTime() of the first request in this save
+
+    PendingSave(List<Bill> bills, long seq, List<String> journalRecords) {
+        this.bills = bills;
+        this.seq = seq;
+        this.journalRecords = new ArrayList<>(journalRecords);
+        this.requestedAt = System.nanoTime();
+    }
+
+    List<Bill> getBills() {
+        return bills;
+    }
+
+    long getSeq() {
+        return seq;
+    }
+
+    List<String> getJournalRecords() {
+        return journalRecords;
+    }
+
+    long getRequestedAt() {
+        return requestedAt;
+    }
+
+    /**
+     * Fold a later save into this one so both are written together.
+     * A later full copy already holds every earlier change, so it replaces what was queued.
+     * @param later the save requested after this one.
+     */
+    void merge(PendingSave later) {
+        if (later.bills != null) {
+            bills = later.bills;
+            seq = later.seq;
+            journalRecords.clear();
+        }
+        journalRecords.addAll(later.journalRecords);
+    }
+}
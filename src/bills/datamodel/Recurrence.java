@@ -0,0 +1,35 @@
+package bills.datamodel;
+
+/**
+ * enum Recurrence - how often a bill falls due again after its due date.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public enum Recurrence {
+
+    NONE(0, "Does not repeat"),
+    MONTHLY(1, "Monthly"),
+    QUARTERLY(3, "Quarterly"),
+    YEARLY(12, "Yearly");
+
+    private final int months;
+    private final String label;
+
+    Recurrence(int months, String label) {
+        this.months = months;
+        this.label = label;
+    }
+
+    /**
+     * @return months between one due date and the next, 0 for a one-off bill.
+     */
+    public int getMonths() {
+        return months;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
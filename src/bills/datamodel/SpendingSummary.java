@@ -0,0 +1,69 @@
+package bills.datamodel;
+
+/**
+ * class SpendingSummary is one row of an aggregation: the bills of one account
+ * or bill name due in one month or year.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class SpendingSummary {
+
+    private final String group;
+    private final String period;
+    private final int count;
+    private final long totalCents;
+    private final long minCents;
+    private final long maxCents;
+
+    public SpendingSummary(String group, String period, int count, long totalCents, long minCents, long maxCents) {
+        this.group = group;
+        this.period = period;
+        this.count = count;
+        this.totalCents = totalCents;
+        this.minCents = minCents;
+        this.maxCents = maxCents;
+    }
+
+    /** @return the bank account or bill name. */
+    public String getGroup() {
+        return group;
+    }
+
+    /** @return the month as yyyy-MM or the year as yyyy. */
+    public String getPeriod() {
+        return period;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public double getTotal() {
+        return totalCents / 100.0;
+    }
+
+    public double getMin() {
+        return minCents / 100.0;
+    }
+
+    public double getMax() {
+        return maxCents / 100.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SpendingSummary{" +
+                "group=" + group +
+                ", period=" + period +
+                ", count=" + count +
+                ", total=" + getTotal() +
+                ", min=" + getMin() +
+                ", max=" + getMax() +
+                '}';
+    }
+}
@@ -0,0 +1,92 @@
+package bills.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class StringDictionary gives each distinct string a small int code, so a column
+ * of repeating strings can be stored as an int[] and grouped by code.
+ * Each code counts the rows using it. A code no row uses any more is dropped with its
+ * string and given to the next new string, so the dictionary only holds the strings in
+ * use; null has a code too.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+final class StringDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private int[] uses = new int[16];   // Rows using each code, 0 for a dropped code
+    private int[] free = new int[16];   // Dropped codes, reused before new ones
+    private int freeCount;
+
+    /**
+     * Count one more use of a string.
+     * @param value a string, may be null.
+     * @return the code for the string, allocating one if it is not in use.
+     */
+    int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            if (freeCount > 0) {
+                code = free[--freeCount];
+                values.set(code, value);
+            } else {
+                code = values.size();
+                values.add(value);
+                if (code == uses.length) {
+                    uses = Arrays.copyOf(uses, code * 2);
+                }
+            }
+            codes.put(value, code);
+        }
+        uses[code]++;
+        return code;
+    }
+
+    /**
+     * Count one less use of a code, dropping it and its string once nothing uses it.
+     * @param code a code from encode().
+     */
+    void release(int code) {
+        if (--uses[code] == 0) {
+            codes.remove(values.get(code));
+            values.set(code, null);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = code;
+        }
+    }
+
+    /**
+     * @param value a string, may be null.
+     * @return the string's code, or -1 if it is not in use.
+     */
+    int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    String decode(int code) {
+        return values.get(code);
+    }
+
+    /**
+     * @return every string, indexed by code, null at dropped codes.
+     */
+    String[] values() {
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * @return one more than the highest code given out.
+     */
+    int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,371 @@
+package bills.datamodel;
+
+import bills.DateUtil;
+
+import javax.xml.stream.*;
+import javax.xml.stream.events.*;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * class XmlBillStorage reads and writes bills as an XML file.
+ * Also used for importing and exporting bills whatever storage BillData uses.
+ *
+ * @author Wayne Sandford
+ * @version 18-10-26 01
+ */
+public class XmlBillStorage implements BillStorage {
+
+    private static final String ROOT = "contacts";
+    private static final String BILL = "bill";
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String DATE_DUE = "date_due";
+    private static final String AMOUNT = "amount";
+    private static final String BANK_ACCOUNT = "bank_account";
+    private static final String DATE_STARTED = "date_started";
+    private static final String DATE_CHANGED = "date_changed";
+    private static final String PREVIOUS_AMOUNT = "previous_amount";
+    private static final String NOTES = "notes";
+    private static final String RECURRENCE = "recurrence";
+    private static final String JOURNAL_SEQ = "journal_seq";
+
+    // The factory is thread-safe, so share one rather than building one per file
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private final Path path;
+
+    public XmlBillStorage(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Load bills from the XML file.
+     * Uses the cursor based XMLStreamReader so no event object is created per tag.
+     */
+    @Override
+    public long load(List<Bill> bills) throws IOException {
+        return forEach(bills::add);
+    }
+
+    /**
+     * Read the bills one at a time straight from the file, in constant memory.
+     */
+    @Override
+    public long forEach(Consumer<? super Bill> action) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path.toFile()))) {
+            return readBills(in, action, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Load bills from the XML file, parsing chunks of it on several threads.
+     * Gives the same bills in the same order as load().
+     * @param bills list the bills are added to.
+     * @param pool pool to parse on.
+     * @return the journal sequence number the stored bills include.
+     * @throws IOException if the file cannot be read.
+     */
+    public long loadParallel(List<Bill> bills, ForkJoinPool pool) throws IOException {
+        return ParallelXmlLoader.load(path, bills, pool);
+    }
+
+    /**
+     * Read the journal sequence number from the root element, without reading any bills.
+     * @param in the XML to read, which need only run as far as the root element.
+     * @return the journal sequence number, 0 if none.
+     * @throws IOException if the XML cannot be read.
+     */
+    static long readJournalSeq(InputStream in) throws IOException {
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    String seq = reader.getAttributeValue(null, JOURNAL_SEQ);
+                    return seq == null ? 0 : parseLong(JOURNAL_SEQ, seq);
+                }
+            }
+            return 0;
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Problem reading bill: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read bill elements from XML, which may be a whole bills file or a run of bill
+     * elements wrapped in any root element.
+     * @param in the XML to read.
+     * @param action called with each bill as it is read.
+     * @param maxBills stop after this many bills.
+     * @return the journal sequence number held by the root element, 0 if none.
+     * @throws IOException if the XML cannot be read.
+     */
+    static long readBills(InputStream in, Consumer<? super Bill> action, int maxBills) throws IOException {
+        long snapshotSeq = 0;
+        int count = 0;
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+            Bill bill = null;
+
+            while (count < maxBills && reader.hasNext()) {
+                int eventType = reader.next();
+
+                if (eventType == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (BILL.equals(element)) {
+                        bill = new Bill();
+                        continue;
+                    }
+                    if (bill == null) { // Root element or unknown tag outside of a bill
+                        String seq = reader.getAttributeValue(null, JOURNAL_SEQ);
+                        if (seq != null) {
+                            snapshotSeq = parseLong(JOURNAL_SEQ, seq);
+                        }
+                        continue;
+                    }
+
+                    switch (element) {
+                        case ID:
+                            bill.setId(parseLong(element, reader.getElementText()));
+                            break;
+                        case NAME:
+                            bill.setName(BillStrings.intern(reader.getElementText()));
+                            break;
+                        case DATE_DUE:
+                            bill.setDateOfPayment(parseDate(element, reader.getElementText()));
+                            break;
+                        case AMOUNT:
+                            bill.setAmount(parseDouble(element, reader.getElementText()));
+                            break;
+                        case BANK_ACCOUNT:
+                            bill.setBankAccount(BillStrings.intern(reader.getElementText()));
+                            break;
+                        case DATE_STARTED:
+                            bill.setDateStarted(parseDate(element, reader.getElementText()));
+                            break;
+                        case DATE_CHANGED:
+                            bill.setDateChanged(parseDate(element, reader.getElementText()));
+                            break;
+                        case PREVIOUS_AMOUNT:
+                            bill.setPreviousAmount(parseDouble(element, reader.getElementText()));
+                            break;
+                        case NOTES:
+                            bill.setNotes(BillStrings.intern(reader.getElementText()));
+                            break;
+                        case RECURRENCE:
+                            bill.setRecurrence(parseRecurrence(element, reader.getElementText()));
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                    // If we reach the end of a bill element, we hand it on
+                    if (bill != null && BILL.equals(reader.getLocalName())) {
+                        action.accept(bill);
+                        bill = null;
+                        count++;
+                    }
+                }
+            }
+            reader.close();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Problem reading bill: " + e.getMessage(), e);
+        }
+        return snapshotSeq;
+    }
+
+    // The parsers below name the element and its text when the text cannot be read, so a
+    // bad value is reported like bad XML rather than ending whatever is reading the file.
+
+    private static long parseLong(String element, String text) throws IOException {
+        try {
+            return Long.parseLong(text);
+        }
+        catch (NumberFormatException e) {
+            throw badValue(element, text, e);
+        }
+    }
+
+    private static double parseDouble(String element, String text) throws IOException {
+        try {
+            return Double.parseDouble(text);
+        }
+        catch (NumberFormatException e) {
+            throw badValue(element, text, e);
+        }
+    }
+
+    private static LocalDate parseDate(String element, String text) throws IOException {
+        try {
+            return DateUtil.parseFileDate(text);
+        }
+        catch (DateTimeParseException e) {
+            throw badValue(element, text, e);
+        }
+    }
+
+    private static Recurrence parseRecurrence(String element, String text) throws IOException {
+        try {
+            return Recurrence.valueOf(text);
+        }
+        catch (IllegalArgumentException e) {
+            throw badValue(element, text, e);
+        }
+    }
+
+    private static IOException badValue(String element, String text, RuntimeException e) {
+        return new IOException("Problem reading bill: bad " + element + " \"" + text + "\"", e);
+    }
+
+    /**
+     * Write every bill to the XML file through a temporary file, so a failed
+     * write leaves the previous file in place.
+     */
+    @Override
+    public void save(List<Bill> bills, long seq) throws IOException {
+        Path temp = Paths.get(path + ".tmp");
+
+        try (OutputStream out = new FileOutputStream(temp.toFile());
+             Writer writer = new Writer(out, seq)) {
+            for (Bill bill: bills) {
+                writer.write(bill);
+            }
+        }
+
+        // Replace the old file only once the new one is complete.
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes bills as XML one at a time, so any number of them can be written to a file
+     * or other stream without holding them all. Closing the writer finishes the document
+     * but leaves the stream open.
+     */
+    public static final class Writer implements Closeable {
+
+        private final XMLEventWriter eventWriter;
+        private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+        private final XMLEvent end = eventFactory.createDTD("\n");
+        private final XMLEvent tab = eventFactory.createDTD("\t");
+
+        /**
+         * Start the document.
+         * @param out stream to write to.
+         * @param seq the journal sequence number the bills include, 0 if not from a bills file.
+         * @throws IOException if the start of the document cannot be written.
+         */
+        public Writer(OutputStream out, long seq) throws IOException {
+            try {
+                // create XMLEventWriter
+                eventWriter = XMLOutputFactory.newInstance().createXMLEventWriter(out);
+                // create and write Start Tag
+                StartDocument startDocument = eventFactory.createStartDocument();
+                eventWriter.add(startDocument);
+                eventWriter.add(end);
+
+                StartElement contactsStartElement = eventFactory.createStartElement("",
+                        "", ROOT);
+                eventWriter.add(contactsStartElement);
+                // Changes up to this sequence number are included, so they are not replayed again.
+                eventWriter.add(eventFactory.createAttribute(JOURNAL_SEQ, Long.toString(seq)));
+                eventWriter.add(end);
+            }
+            catch (XMLStreamException e) {
+                throw new IOException("Problem writing bill: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Write one bill to XML file
+         * @param bill a Bill object that will be written to file.
+         * @throws IOException if the bill cannot be written.
+         */
+        public void write(Bill bill) throws IOException {
+            try {
+                // create contact open tag
+                StartElement configStartElement = eventFactory.createStartElement("",
+                        "", BILL);
+                eventWriter.add(configStartElement);
+                eventWriter.add(end);
+                // Write the different nodes
+                if (bill.getId() != 0) { // Bills written outside BillData may have no id
+                    createNode(ID, Long.toString(bill.getId()));
+                }
+                createNode(NAME, bill.getName());
+                String formattedString = DateUtil.formatFileDate(bill.getDateOfPayment());
+                createNode(DATE_DUE, formattedString);
+                createNode(AMOUNT, Double.toString(bill.getAmount()));
+                createNode(BANK_ACCOUNT, bill.getBankAccount());
+                formattedString = DateUtil.formatFileDate(bill.getDateStarted());
+                createNode(DATE_STARTED, formattedString);
+                formattedString = DateUtil.formatFileDate(bill.getDateChanged());
+                createNode(DATE_CHANGED, formattedString);
+                createNode(PREVIOUS_AMOUNT, Double.toString(bill.getPreviousAmount()));
+                createNode(NOTES, bill.getNotes());
+                if (bill.getRecurrence() != Recurrence.NONE) { // One-off bills are written as before
+                    createNode(RECURRENCE, bill.getRecurrence().name());
+                }
+
+                eventWriter.add(eventFactory.createEndElement("", "", BILL));
+                eventWriter.add(end);
+            }
+            catch (XMLStreamException e) {
+                throw new IOException("Problem writing bill: " + e.getMessage(), e);
+            }
+        }
+
+        private void createNode(String name, String value) throws XMLStreamException {
+            // create Start node
+            StartElement sElement = eventFactory.createStartElement("", "", name);
+            eventWriter.add(tab);
+            eventWriter.add(sElement);
+            // create Content, none for a missing value such as an empty date
+            if (value != null) {
+                Characters characters = eventFactory.createCharacters(value);
+                eventWriter.add(characters);
+            }
+            // create End node
+            EndElement eElement = eventFactory.createEndElement("", "", name);
+            eventWriter.add(eElement);
+            eventWriter.add(end);
+        }
+
+        /**
+         * Finish the document and flush it to the stream.
+         * @throws IOException if the end of the document cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                eventWriter.add(eventFactory.createEndElement("", "", ROOT));
+                eventWriter.add(end);
+                eventWriter.add(eventFactory.createEndDocument());
+                eventWriter.close();
+            }
+            catch (XMLStreamException e) {
+                throw new IOException("Problem writing bill: " + e.getMessage(), e);
+            }
+        }
+    }
+}
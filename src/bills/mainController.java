@@ -1,14 +1,33 @@
 package bills;
 
 import bills.datamodel.Bill;
+import bills.datamodel.BillAggregator;
 import bills.datamodel.BillData;
+import bills.datamodel.BillFileWatcher;
+import bills.datamodel.BillSaver;
+import bills.datamodel.BillSearchIndex;
+import bills.datamodel.BillUpdater;
+import bills.datamodel.PagedBillList;
+import bills.datamodel.SpendingSummary;
+import bills.datamodel.XmlBillStorage;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.TextAlignment;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -19,6 +38,9 @@ import java.util.Optional;
  */
 public class mainController {
 
+    private static final boolean TIME_DIALOGS = Boolean.getBoolean("bills.timeDialogs");
+    private static final Integer HTTP_PORT = Integer.getInteger("bills.httpPort"); // Serve the bills over HTTP when set
+
     @FXML
     private AnchorPane mainPanel;
     @FXML
@@ -45,8 +67,27 @@ public class mainController {
     private Label notesLabel;
     @FXML
     private Label totalLabel;
+    @FXML
+    private TextField searchField;
 
     private BillData data; // class BillData variable
+    private BillSaver saver; // Writes changes to file off the FX thread
+    private BillServer server; // Local HTTP access to the bills, only when bills.httpPort is set
+    private BillFileWatcher fileWatcher; // Applies changes other programs make to the bills file
+    private PagedBillList pagedBills; // Set when the bills file is too big to load; the table is then read only
+    private ObservableList<Bill> dueView = FXCollections.observableArrayList(); // Bills due in the chosen range
+    private LocalDate viewFrom; // First and last due dates shown, null when showing all bills
+    private LocalDate viewTo;
+    private static final int SEARCH_LIMIT = 1000; // Most matches shown for each keystroke
+
+    private BillSearchIndex searchIndex; // Built in the background once the bills load, null until ready
+    private BillSearchIndex.Search search; // Type-ahead search, created on the first keystroke
+    private ObservableList<Bill> searchResults = FXCollections.observableArrayList();
+    private final Tooltip moreMatchesTip =
+            new Tooltip(String.format("Showing the first %,d matches, type more to narrow them", SEARCH_LIMIT));
+    private Dialog<ButtonType> billDialog; // Add and edit dialog, loaded once and reused
+    private BillController billController; // Controller of billDialog
+    private boolean shutDown; // Set once shutdown() has closed everything
 
     /**
      * Initialise variables, set up bill list
@@ -55,49 +96,96 @@ public class mainController {
         // Clear person details.
         showPersonDetails(null);
         data = new BillData(); // Create new BillData instance.
-        data.loadBills(); // Load the bills from file.
-        billsTable.setItems(data.getBills()); // Set up TableView to list bills
-
-        // Formatting of date for table column
-        dateColumn.setCellFactory(tc -> new TableCell<>() {
-
-            @Override
-            protected void updateItem(LocalDate aDate, boolean empty) {
-                super.updateItem(aDate, empty);
-                if (empty) {
-                    setText(null);
+        data.setJournaled(true); // Save each change to the journal rather than rewriting the file.
+        if (data.shouldPage()) { // Very large file - read bills a page at a time as the table scrolls.
+            try {
+                pagedBills = PagedBillList.open(data.getStorage().getPath());
+            } catch (IOException e) {
+                System.out.println("Could not index the bills file");
+                e.printStackTrace();
+            }
+        }
+        if (pagedBills != null) {
+            // Sorting would copy every bill into memory, which paging is there to avoid.
+            billsTable.getColumns().forEach(column -> column.setSortable(false));
+            billsTable.setSortPolicy(table -> false);
+            billsTable.setItems(pagedBills);
+        } else {
+            data.loadBills(); // Load the bills from file.
+            data.buildSearchIndexLater(Platform::runLater).whenComplete((index, failure) -> {
+                if (failure != null) {
+                    System.out.println("Could not index the bills for searching");
+                    failure.printStackTrace();
                 } else {
-
-                    setText(String.format(DateUtil.format(aDate)));
+                    searchIndex = index;
+                    refreshSearch(); // Anything typed while it was built
+                }
+            });
+            saver = new BillSaver(data);
+            billsTable.setItems(data.getBills()); // Set up TableView to list bills
+            if (data.getStorage() instanceof XmlBillStorage) {
+                try {
+                    fileWatcher = new BillFileWatcher(data, Platform::runLater, this::changedElsewhere);
+                } catch (IOException e) {
+                    System.out.println("Could not watch the bills file for changes");
+                    e.printStackTrace();
                 }
             }
-        });
+            if (HTTP_PORT != null) {
+                startServer(HTTP_PORT);
+            }
+        }
+
+        // Formatting of date for table column, each date formatted once and the text reused.
+        dateColumn.setCellFactory(new FormattedTableCellFactory<>(TextAlignment.CENTER, DateUtil::format));
 
         // Listen for selection changes and show the person details when changed.
         // With billsTable.getSelectionModel... we get the selectedItemProperty
         // of the bill table and add a listener to it.
         // Whenever the user selects a bill in the table, our lambda expression is executed.
         // We take the newly selected person and pass it to the showPersonDetails(...) method.
+        billsTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE); // Several bills can be deleted at once.
         billsTable.getSelectionModel().selectedItemProperty().addListener(
                 (observable, oldValue, newValue) -> showPersonDetails(newValue));
 
         // Formatting for decimal amount value in table column.
-        amountColumn.setCellFactory(tc -> new TableCell<Bill, Double>() {
+        amountColumn.setCellFactory(new FormattedTableCellFactory<>(TextAlignment.RIGHT, AmountUtil::format));
 
-            @Override
-            protected void updateItem(Double anAmount, boolean empty) {
-                super.updateItem(anAmount, empty);
-                if (empty) {
-                    setText(null);
-                } else {
-                    //setText(decimalFormat.format(anAmount));
-                    setText(String.format("%.2f", anAmount.doubleValue()));
-                }
-            }
-        });
+        // Current total of bill amounts, kept up to date by BillData as bills change.
+        if (pagedBills != null) {
+            totalLabel.setText(String.format("%.2f", pagedBills.getTotal()));
+            searchField.setDisable(true);
+        } else {
+            totalLabel.textProperty().bind(data.totalProperty().asString("%.2f"));
+            searchField.textProperty().addListener((observable, oldText, newText) -> refreshSearch());
+            // Parse the bill dialog once the window is up rather than on the first click.
+            Platform.runLater(this::getBillDialog);
+        }
+    }
+
+    /**
+     * Bills can't be changed while a very large file is being browsed a page at a time.
+     * @return true if bills can be added, edited and deleted, otherwise tells the user why not.
+     */
+    private boolean isEditable() {
+        if (pagedBills == null) {
+            return true;
+        }
+        showViewOnlyMessage("The bills file is too large to edit here, it is opened for viewing only.");
+        return false;
+    }
 
-        // Update current total of bill amounts and display in appropriate label
-        totalLabel.setText(Double.toString(data.calculateTotal())); // Set up current bills total.
+    /**
+     * Tell the user something can't be done while a very large file is browsed a page at a time.
+     *
+     * @param message the reason.
+     */
+    private void showViewOnlyMessage(String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Bills File Is Read Only");
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
     }
 
     /**
@@ -136,39 +224,26 @@ public class mainController {
      */
     @FXML
     public void showAddBillDialog() {
-        Dialog<ButtonType> dialog = new Dialog<>(); // Create new dialog box instance.
-        dialog.initOwner(mainPanel.getScene().getWindow());
-        dialog.setTitle("Add New Bill");
-        FXMLLoader fxmlLoader = new FXMLLoader();
-        fxmlLoader.setLocation(getClass().getResource("dialogDetails.fxml"));
-        // Load dialog box.
-        try {
-            dialog.getDialogPane().setContent(fxmlLoader.load());
-
-        } catch(IOException e) {
-            System.out.println("Could not load the dialog");
-            e.printStackTrace();
+        if (!isEditable()) {
             return;
         }
+        long clicked = System.nanoTime();
+        Dialog<ButtonType> dialog = getBillDialog();
+        if (dialog == null) {
+            return;
+        }
+        billController.reset(); // Clear whatever the dialog was last used for.
 
-        // Add buttons.
-        dialog.getDialogPane().getButtonTypes().add(ButtonType.OK);
-        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
-
-        Optional<ButtonType> result = dialog.showAndWait(); // Dialog box in modal mode.
+        Optional<ButtonType> result = showBillDialog(dialog, "Add New Bill", clicked); // Dialog box in modal mode.
         // If content is present and button OK is pressed.
         if(result.isPresent() && result.get() == ButtonType.OK) {
-            // Get access to the controller associated with the bill dialog fxml file.
-            BillController billController = fxmlLoader.getController(); // Menu dialog controller retrieve.
             Bill newBill = billController.getNewBill(); // Retrieve new bill object from dialog controller.
 
             // Test to see if newBill is null, which means a invalid bill object
             if(newBill != null) { // Validated Bill object
                 data.addBill(newBill); // Add the new bill to the bills list.
-                data.saveBills(); // Write updated list to file.
-
-                // Update current total of bill amounts and display in appropriate label
-                totalLabel.setText(Double.toString(data.calculateTotal())); // Set up current bills total.
+                saver.requestSave(); // Write updated list to file in the background.
+                refreshDueView();
 
             } else { // Invalid object - null returned
                 Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -186,6 +261,9 @@ public class mainController {
      */
     @FXML
     public void showEditBillDialog() {
+        if (!isEditable()) {
+            return;
+        }
 
         // Will retreive the highlighed row/Bill object from the tableview.
         Bill selectedBill = billsTable.getSelectionModel().getSelectedItem();
@@ -198,37 +276,23 @@ public class mainController {
             return;
         }
 
-        // Valid bill selected.
-        Dialog<ButtonType> dialog = new Dialog<>(); // Create new dialog box instance.
-        dialog.initOwner(mainPanel.getScene().getWindow()); // Assign it to be part of the main panel.
-        dialog.setTitle("Edit Bill");
-        FXMLLoader fxmlLoader = new FXMLLoader();
-        // Assign fxml loader - same one as adding a contact.
-        fxmlLoader.setLocation(getClass().getResource("dialogDetails.fxml"));
-        try {
-            dialog.getDialogPane().setContent(fxmlLoader.load());
-        } catch (IOException e) {
-            System.out.println("Could not load the dialog");
-            e.printStackTrace();
+        // Valid bill selected - same dialog as adding a bill.
+        long clicked = System.nanoTime();
+        Dialog<ButtonType> dialog = getBillDialog();
+        if (dialog == null) {
             return;
         }
-
-        // Display buttons
-        dialog.getDialogPane().getButtonTypes().add(ButtonType.OK);
-        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
-
-        //
-        BillController billController = fxmlLoader.getController();
         // Populate the dialog box with the bill data of chosen object so it can be edited.
         billController.editBill(selectedBill);
 
-        Optional<ButtonType> result = dialog.showAndWait();
+        Optional<ButtonType> result = showBillDialog(dialog, "Edit Bill", clicked);
         if (result.isPresent() && result.get() == ButtonType.OK) {
             if(billController.updateBill(selectedBill) == true) { // Validated updated bill
                 {
-                    data.saveBills();
+                    data.updateBill(selectedBill); // Record the edit so it is saved.
+                    saver.requestSave();
+                    refreshDueView();
                     showPersonDetails(selectedBill);
-                    totalLabel.setText(Double.toString(data.calculateTotal())); // Update bills total.
                 }
             } else { // Invalid updated bill
                 Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -242,12 +306,58 @@ public class mainController {
     }
 
     /**
-     * Event handler for deleting a Bill.
+     * The add and edit bill dialog. The FXML is loaded the first time it is needed,
+     * normally just after start up, and the dialog and its controller reused after that.
+     * @return the bill dialog, or null if it could not be loaded.
+     */
+    private Dialog<ButtonType> getBillDialog() {
+        if (billDialog == null) {
+            Dialog<ButtonType> dialog = new Dialog<>(); // Create new dialog box instance.
+            FXMLLoader fxmlLoader = new FXMLLoader();
+            fxmlLoader.setLocation(getClass().getResource("dialogDetails.fxml"));
+            // Load dialog box.
+            try {
+                dialog.getDialogPane().setContent(fxmlLoader.load());
+            } catch (IOException e) {
+                System.out.println("Could not load the dialog");
+                e.printStackTrace();
+                return null;
+            }
+
+            // Add buttons.
+            dialog.getDialogPane().getButtonTypes().add(ButtonType.OK);
+            dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+            billController = fxmlLoader.getController();
+            billDialog = dialog;
+        }
+        return billDialog;
+    }
+
+    /**
+     * Show the bill dialog and wait for it to be closed.
+     * With -Dbills.timeDialogs=true prints how long it took to appear after the click.
+     */
+    private Optional<ButtonType> showBillDialog(Dialog<ButtonType> dialog, String title, long clicked) {
+        if (dialog.getOwner() == null) {
+            dialog.initOwner(mainPanel.getScene().getWindow()); // Assign it to be part of the main panel.
+        }
+        dialog.setTitle(title);
+        dialog.setOnShown(TIME_DIALOGS
+                ? event -> System.out.printf("%s dialog shown in %.1f ms%n", title, (System.nanoTime() - clicked) / 1e6)
+                : null);
+        return dialog.showAndWait();
+    }
+
+    /**
+     * Event handler for deleting the selected Bills, all in one change and one save.
      */
     @FXML
     public void deleteBill() {
-        Bill selectedBill = billsTable.getSelectionModel().getSelectedItem();
-        if(selectedBill == null) { // No contacted selected
+        if (!isEditable()) {
+            return;
+        }
+        List<Bill> selectedBills = new ArrayList<>(billsTable.getSelectionModel().getSelectedItems());
+        if(selectedBills.isEmpty()) { // No contacted selected
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
             alert.setTitle("No Bill Selected");
             alert.setHeaderText(null);
@@ -260,15 +370,166 @@ public class mainController {
         Alert alert = new Alert(Alert.AlertType.CONFIRMATION); // Confirmation alert.
         alert.setTitle("Delete Bill");
         alert.setHeaderText(null);
-        alert.setContentText("Are you sure yo want to delete selected bill: " +
-                selectedBill.getName()); // Final check if bill object to be deleted.
+        alert.setContentText(selectedBills.size() == 1
+                ? "Are you sure yo want to delete selected bill: " + selectedBills.get(0).getName()
+                : "Are you sure yo want to delete the " + selectedBills.size() + " selected bills?"); // Final check if bill objects to be deleted.
 
         Optional<ButtonType> result = alert.showAndWait();
         if(result.isPresent() && result.get() == ButtonType.OK) { // Delete
-            data.deleteBill(selectedBill); // Delete bill object from list.
-            data.saveBills(); // Write updated list to file
-            totalLabel.setText(Double.toString(data.calculateTotal())); // Update bills total.
+            data.deleteBills(selectedBills); // Delete bill objects from list.
+            saver.requestSave(); // Write updated list to file in the background
+            refreshDueView();
+        }
+    }
+
+    /**
+     * Event handler for view all bills menu option.
+     */
+    @FXML
+    public void showAllBills() {
+        if (pagedBills != null) {
+            return; // Already showing every bill.
+        }
+        viewFrom = null;
+        viewTo = null;
+        searchField.clear();
+        billsTable.setItems(data.getBills());
+    }
+
+    /**
+     * Event handler for view bills due this week (Monday to Sunday) menu option.
+     */
+    @FXML
+    public void showDueThisWeek() {
+        LocalDate today = LocalDate.now();
+        showDueBetween(today.with(DayOfWeek.MONDAY), today.with(DayOfWeek.SUNDAY));
+    }
+
+    /**
+     * Event handler for view bills due this month menu option.
+     */
+    @FXML
+    public void showDueThisMonth() {
+        LocalDate today = LocalDate.now();
+        showDueBetween(today.withDayOfMonth(1), today.withDayOfMonth(today.lengthOfMonth()));
+    }
+
+    /**
+     * Show only the bills due between two dates, looked up in the due date index.
+     *
+     * @param from first due date, inclusive.
+     * @param to last due date, inclusive.
+     */
+    private void showDueBetween(LocalDate from, LocalDate to) {
+        if (pagedBills != null) {
+            showViewOnlyMessage("Bills can't be filtered while a very large file is opened for viewing only.");
+            return;
         }
+        viewFrom = from;
+        viewTo = to;
+        searchField.clear();
+        refreshDueView();
+        billsTable.setItems(dueView);
+    }
+
+    /**
+     * Re-run the current due date range after bills have been added, edited or deleted.
+     */
+    private void refreshDueView() {
+        if (viewFrom != null) {
+            dueView.setAll(data.getDueDateIndex().dueBetween(viewFrom, viewTo));
+        }
+        refreshSearch();
+    }
+
+    /**
+     * Save the changes made over HTTP or by another program writing the bills file, and
+     * show them in the due date range and search results as the window's own are.
+     */
+    private void changedElsewhere() {
+        saver.requestSave();
+        refreshDueView();
+    }
+
+    /**
+     * Show the bills matching the search box, or the current view when it is empty.
+     */
+    private void refreshSearch() {
+        String query = searchField.getText();
+        if (query == null || query.trim().isEmpty()) {
+            if (billsTable.getItems() == searchResults) {
+                billsTable.setItems(viewFrom == null ? data.getBills() : dueView);
+            }
+            return;
+        }
+        if (searchIndex == null) {
+            return; // Still being built, searched once it is ready
+        }
+        if (search == null) {
+            search = searchIndex.newSearch(SEARCH_LIMIT);
+        }
+        searchResults.setAll(search.update(query));
+        searchField.setTooltip(search.hasMore() ? moreMatchesTip : null);
+        if (billsTable.getItems() != searchResults) {
+            billsTable.setItems(searchResults);
+        }
+    }
+
+    /**
+     * Event handler for spending summary menu option. Shows count, total, smallest and
+     * largest bill per account or bill name for each month or year.
+     */
+    @FXML
+    public void showSpendingSummary() {
+        if (pagedBills != null) {
+            showViewOnlyMessage("A summary can't be worked out while a very large file is opened for viewing only.");
+            return;
+        }
+
+        ChoiceBox<BillAggregator.GroupBy> groupBy =
+                new ChoiceBox<>(FXCollections.observableArrayList(BillAggregator.GroupBy.values()));
+        groupBy.setValue(BillAggregator.GroupBy.ACCOUNT);
+        ChoiceBox<BillAggregator.Period> period =
+                new ChoiceBox<>(FXCollections.observableArrayList(BillAggregator.Period.values()));
+        period.setValue(BillAggregator.Period.MONTH);
+
+        TableView<SpendingSummary> summaryTable = new TableView<>();
+        FormattedTableCellFactory<SpendingSummary, Double> amountCells =
+                new FormattedTableCellFactory<>(TextAlignment.RIGHT, AmountUtil::format);
+        summaryTable.getColumns().add(summaryColumn("Account / Name", "group", 120));
+        summaryTable.getColumns().add(summaryColumn("Period", "period", 80));
+        summaryTable.getColumns().add(summaryColumn("Bills", "count", 60));
+        TableColumn<SpendingSummary, Double> totalColumn = summaryColumn("Total (\u00a3)", "total", 90);
+        totalColumn.setCellFactory(amountCells);
+        summaryTable.getColumns().add(totalColumn);
+        TableColumn<SpendingSummary, Double> minColumn = summaryColumn("Smallest", "min", 80);
+        minColumn.setCellFactory(amountCells);
+        summaryTable.getColumns().add(minColumn);
+        TableColumn<SpendingSummary, Double> maxColumn = summaryColumn("Largest", "max", 80);
+        maxColumn.setCellFactory(amountCells);
+        summaryTable.getColumns().add(maxColumn);
+
+        // Aggregate again whenever the grouping or period is changed.
+        Runnable refresh = () -> summaryTable.getItems().setAll(
+                new BillAggregator(data.getColumns(), groupBy.getValue()).aggregate(period.getValue()));
+        groupBy.valueProperty().addListener((observable, oldValue, newValue) -> refresh.run());
+        period.valueProperty().addListener((observable, oldValue, newValue) -> refresh.run());
+        refresh.run();
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.initOwner(mainPanel.getScene().getWindow());
+        dialog.setTitle("Spending Summary");
+        HBox choices = new HBox(10, new Label("Group by"), groupBy, new Label("Per"), period);
+        dialog.getDialogPane().setContent(new VBox(10, choices, summaryTable));
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.showAndWait();
+    }
+
+    private static <T> TableColumn<SpendingSummary, T> summaryColumn(String title, String property, double width) {
+        TableColumn<SpendingSummary, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(new PropertyValueFactory<>(property));
+        column.setPrefWidth(width);
+        return column;
     }
 
     /**
@@ -288,7 +549,53 @@ public class mainController {
      */
     @FXML
     public void handleExit() {
-        Platform.exit();
+        Platform.exit(); // Main.stop() then calls shutdown()
+    }
+
+    /**
+     * Let other programs on this machine read and change the bills over HTTP. Their
+     * changes are made on the FX thread and saved like the window's own.
+     */
+    private void startServer(int port) {
+        try {
+            BillUpdater updater = new BillUpdater(data, Platform::runLater, this::changedElsewhere);
+            server = new BillServer(data, updater, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.start();
+        } catch (IOException e) {
+            System.out.println("Could not start the bills HTTP server on port " + port);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write any saves still waiting in the background before the application closes.
+     * Only the first call does anything.
+     */
+    public void shutdown() {
+        if (shutDown) {
+            return;
+        }
+        shutDown = true;
+        if (server != null) {
+            server.stop();
+        }
+        if (fileWatcher != null) {
+            try {
+                fileWatcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (saver != null) {
+            saver.close();
+        }
+        if (pagedBills != null) {
+            try {
+                pagedBills.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
 }
@@ -2,7 +2,10 @@ module BillsApp {
     requires javafx.fxml;
     requires javafx.controls;
     requires java.xml;
+    requires java.sql;
+    requires jdk.httpserver;
     requires java.base;
+    requires jdk.management;
     opens bills;
     opens bills.datamodel;
 }
\ No newline at end of file